@@ -0,0 +1,56 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Data directories of the stores built by the benchmarks.
+ */
+@Slf4j
+final class BenchmarkDirectories {
+
+    private static final String DATA_DIR_PROPERTY = "benchmark.dataDir";
+
+    private BenchmarkDirectories() {
+    }
+
+    /**
+     * Create an empty directory under the benchmark.dataDir system property, or under the temporary directory.
+     */
+    static Path create(String prefix) throws IOException {
+        String dataDirPath = System.getProperty(DATA_DIR_PROPERTY);
+        if (dataDirPath == null) {
+            return Files.createTempDirectory(prefix);
+        }
+
+        Path parent = Files.createDirectories(Paths.get(dataDirPath));
+        return Files.createTempDirectory(parent, prefix);
+    }
+
+    /**
+     * Delete a directory and everything under it, once the stores in it are closed. Files that cannot be deleted
+     * are only logged.
+     */
+    static void delete(Path directoryPath) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(directoryPath)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Could not delete {}.", path, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.RunnerException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar. Runs JMH with the GC profiler, which reports the allocation rate and the
+ * garbage collections of every benchmark, unless other profilers are given with -prof.
+ * The forked JVMs log at WARN, as the debug logging of the store would otherwise be what is measured.
+ */
+public class BenchmarkMain {
+
+    private static final String PROFILER_OPTION = "-prof";
+    private static final String GC_PROFILER = "gc";
+    private static final String JVM_ARGS_APPEND_OPTION = "-jvmArgsAppend";
+    private static final String LOGBACK_CONFIGURATION = "-Dlogback.configurationFile=logback-benchmark.xml";
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        if (!arguments.contains(PROFILER_OPTION)) {
+            arguments.add(PROFILER_OPTION);
+            arguments.add(GC_PROFILER);
+        }
+        if (!arguments.contains(JVM_ARGS_APPEND_OPTION)) {
+            arguments.add(JVM_ARGS_APPEND_OPTION);
+            arguments.add(LOGBACK_CONFIGURATION);
+        }
+
+        Main.main(arguments.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,27 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+
+/**
+ * Payload written by the benchmarks. The body is sized so that the serialized payload is about payloadSizeInBytes.
+ */
+@Getter
+@NoArgsConstructor
+public class BenchmarkPayload {
+    private long id;
+    private String body;
+
+    public BenchmarkPayload(long id, String body) {
+        this.id = id;
+        this.body = body;
+    }
+
+    public static BenchmarkPayload ofSize(long id, int payloadSizeInBytes) {
+        char[] body = new char[Math.max(0, payloadSizeInBytes - "{\"id\":0,\"body\":\"\"}".length())];
+        Arrays.fill(body, 'x');
+        return new BenchmarkPayload(id, new String(body));
+    }
+}
@@ -0,0 +1,91 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import com.kevi793.EventStorageAndProcessing.cache.Cache;
+import com.kevi793.EventStorageAndProcessing.cache.FIFOCache;
+import com.kevi793.EventStorageAndProcessing.cache.SLRUCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * get and put of the segment caches from concurrent threads, with keys drawn from twice the size of the cache
+ * so that about half of the gets miss and the puts evict.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class CacheBenchmark {
+
+    private static final int CACHE_SIZE = 1024;
+
+    public enum CacheType {
+        FIFO, SLRU
+    }
+
+    @Param({"FIFO", "SLRU"})
+    private CacheType cacheType;
+
+    private Cache<Long, Long> cache;
+
+    @Setup
+    public void setUp() {
+        this.cache = this.cacheType == CacheType.FIFO ? new FIFOCache<>(CACHE_SIZE) : new SLRUCache<>(CACHE_SIZE);
+        for (long key = 0; key < CACHE_SIZE; key++) {
+            this.cache.put(key, key);
+        }
+    }
+
+    @Benchmark
+    @Group("getOnly")
+    @GroupThreads(4)
+    public Long getOnly() {
+        return this.cache.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(3)
+    public Long readMostlyGet() {
+        return this.cache.get(randomKey());
+    }
+
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyPut() {
+        long key = randomKey();
+        this.cache.put(key, key);
+    }
+
+    @Benchmark
+    @Group("uncontended")
+    @GroupThreads(1)
+    public Long uncontended() {
+        long key = randomKey();
+        Long value = this.cache.get(key);
+        if (value == null) {
+            this.cache.put(key, key);
+        }
+        return value;
+    }
+
+    private static long randomKey() {
+        return ThreadLocalRandom.current().nextLong(2 * CACHE_SIZE);
+    }
+}
@@ -0,0 +1,81 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time from EventStore.write until the consumer got the event. Every invocation writes one event and waits
+ * for the consumer, so only one event is in flight at a time.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class EndToEndLatencyBenchmark {
+
+    @Param({"0", "1000"})
+    private int eventProcessorSpinCount;
+
+    @Param({"0", "1024"})
+    private int tailBufferSize;
+
+    @Param({"1024"})
+    private int payloadSizeInBytes;
+
+    private final AtomicLong numberOfEventsConsumed = new AtomicLong();
+    private Path dataDirPath;
+    private EventStore<BenchmarkPayload> eventStore;
+    private BenchmarkPayload payload;
+    private long numberOfEventsWritten;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dataDirPath = BenchmarkDirectories.create("end-to-end-latency-benchmark");
+        this.eventStore = new EventStore.EventStoreBuilder<BenchmarkPayload>(this.dataDirPath.toString(), "end-to-end-latency-benchmark",
+                (payload) -> this.numberOfEventsConsumed.incrementAndGet(), BenchmarkPayload.class)
+                .maxSegmentLogFileSizeInBytes(64 * 1024 * 1024)
+                .eventProcessorSpinCount(this.eventProcessorSpinCount)
+                .tailBufferSize(this.tailBufferSize)
+                .build();
+        this.payload = BenchmarkPayload.ofSize(0, this.payloadSizeInBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.eventStore.close();
+        BenchmarkDirectories.delete(this.dataDirPath);
+    }
+
+    @Benchmark
+    public long writeAndConsume() throws IOException {
+        this.eventStore.write(this.payload);
+        this.numberOfEventsWritten++;
+
+        long numberOfEventsConsumed;
+        while ((numberOfEventsConsumed = this.numberOfEventsConsumed.get()) < this.numberOfEventsWritten) {
+            // The consumer runs on the processor thread, spin until it got the event.
+        }
+        return numberOfEventsConsumed;
+    }
+}
@@ -0,0 +1,84 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import com.kevi793.EventStorageAndProcessing.store.Event;
+import com.kevi793.EventStorageAndProcessing.store.codec.JacksonCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a payload into a record and back, for the text and the binary record formats, and of the codec
+ * the store uses for the payloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventBenchmark {
+
+    @Param({"100", "1024", "16384"})
+    private int payloadSizeInBytes;
+
+    private final JacksonCodec<BenchmarkPayload> codec = new JacksonCodec<>(BenchmarkPayload.class);
+    private BenchmarkPayload payload;
+    private Event event;
+    private String textRecord;
+    private ByteBuffer binaryRecord;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.payload = BenchmarkPayload.ofSize(0, this.payloadSizeInBytes);
+        this.event = Event.fromSerializedPayload(0, this.codec.encode(this.payload));
+        this.textRecord = this.event.toString();
+        this.binaryRecord = ByteBuffer.wrap(this.event.toBinaryRecord());
+    }
+
+    @Benchmark
+    public Event createEvent() throws IOException {
+        return Event.fromSerializedPayload(0, this.codec.encode(this.payload));
+    }
+
+    @Benchmark
+    public String toTextRecord() {
+        return this.event.toString();
+    }
+
+    @Benchmark
+    public byte[] toBinaryRecord() {
+        return this.event.toBinaryRecord();
+    }
+
+    @Benchmark
+    public Event fromTextRecord() {
+        return Event.from(this.textRecord);
+    }
+
+    @Benchmark
+    public Event fromBinaryRecord() throws IOException {
+        return Event.from(this.binaryRecord.duplicate());
+    }
+
+    @Benchmark
+    public byte[] encodeWithCodec() throws IOException {
+        return this.codec.encode(this.payload);
+    }
+
+    @Benchmark
+    public BenchmarkPayload decodeWithCodec() throws IOException {
+        return this.codec.decode(this.event.getPayloadBuffer());
+    }
+}
@@ -0,0 +1,98 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.OffsetRange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of EventStore.read for random events.
+ * HOT reads the last events, which are in the active segment and always in the segment cache.
+ * COLD reads events of every segment with a segment cache of two, so nearly every read opens a segment.
+ * The tail buffer is disabled so that every read goes to the segments.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadBenchmark {
+
+    private static final int NUMBER_OF_EVENTS = 200_000;
+    private static final int NUMBER_OF_HOT_EVENTS = 256;
+    private static final int WRITE_BATCH_SIZE = 1000;
+    private static final long MAX_SEGMENT_LOG_FILE_SIZE_IN_BYTES = 1024 * 1024;
+
+    public enum SegmentTemperature {
+        HOT, COLD
+    }
+
+    @Param({"HOT", "COLD"})
+    private SegmentTemperature temperature;
+
+    @Param({"1024"})
+    private int payloadSizeInBytes;
+
+    private Path dataDirPath;
+    private EventStore<BenchmarkPayload> eventStore;
+    private long firstEventNumber;
+    private long numberOfEventsToRead;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dataDirPath = BenchmarkDirectories.create("read-benchmark");
+        this.eventStore = new EventStore.EventStoreBuilder<>(this.dataDirPath.toString(), "read-benchmark", null, BenchmarkPayload.class)
+                .maxSegmentLogFileSizeInBytes(MAX_SEGMENT_LOG_FILE_SIZE_IN_BYTES)
+                .fileSegmentCacheSize(this.temperature == SegmentTemperature.HOT ? 16 : 2)
+                .tailBufferSize(0)
+                .build();
+
+        OffsetRange writtenEvents = null;
+        for (int written = 0; written < NUMBER_OF_EVENTS; written += WRITE_BATCH_SIZE) {
+            List<BenchmarkPayload> payloads = new ArrayList<>(WRITE_BATCH_SIZE);
+            for (int i = 0; i < WRITE_BATCH_SIZE; i++) {
+                payloads.add(BenchmarkPayload.ofSize(written + i, this.payloadSizeInBytes));
+            }
+            OffsetRange batch = this.eventStore.writeAll(payloads);
+            writtenEvents = writtenEvents == null ? batch : new OffsetRange(writtenEvents.getFirstOffset(), batch.getLastOffset());
+        }
+
+        if (this.temperature == SegmentTemperature.HOT) {
+            this.firstEventNumber = writtenEvents.getLastOffset() - NUMBER_OF_HOT_EVENTS + 1;
+            this.numberOfEventsToRead = NUMBER_OF_HOT_EVENTS;
+        } else {
+            this.firstEventNumber = writtenEvents.getFirstOffset();
+            this.numberOfEventsToRead = NUMBER_OF_EVENTS;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.eventStore.close();
+        BenchmarkDirectories.delete(this.dataDirPath);
+    }
+
+    @Benchmark
+    public BenchmarkPayload read() throws IOException {
+        return this.eventStore.read(this.firstEventNumber + ThreadLocalRandom.current().nextLong(this.numberOfEventsToRead));
+    }
+}
@@ -0,0 +1,81 @@
+package com.kevi793.EventStorageAndProcessing.benchmark;
+
+import com.kevi793.EventStorageAndProcessing.store.DurabilityMode;
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.IngestionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of EventStore.write from one producer thread and from one producer per core.
+ * Nothing consumes the events, so a run keeps every event it writes on disk.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WriteBenchmark {
+
+    @Param({"100", "1024", "16384"})
+    private int payloadSizeInBytes;
+
+    @Param({"1048576", "67108864"})
+    private long maxSegmentLogFileSizeInBytes;
+
+    @Param({"NONE", "GROUP_COMMIT"})
+    private DurabilityMode durabilityMode;
+
+    @Param({"DIRECT", "RING_BUFFER"})
+    private IngestionMode ingestionMode;
+
+    private Path dataDirPath;
+    private EventStore<BenchmarkPayload> eventStore;
+    private BenchmarkPayload payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.dataDirPath = BenchmarkDirectories.create("write-benchmark");
+        this.eventStore = new EventStore.EventStoreBuilder<>(this.dataDirPath.toString(), "write-benchmark", null, BenchmarkPayload.class)
+                .maxSegmentLogFileSizeInBytes(this.maxSegmentLogFileSizeInBytes)
+                .durabilityMode(this.durabilityMode)
+                .ingestionMode(this.ingestionMode)
+                .build();
+        this.payload = BenchmarkPayload.ofSize(0, this.payloadSizeInBytes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.eventStore.close();
+        BenchmarkDirectories.delete(this.dataDirPath);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void singleProducer() throws IOException {
+        this.eventStore.write(this.payload);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void producerPerCore() throws IOException {
+        this.eventStore.write(this.payload);
+    }
+}
@@ -1,9 +1,20 @@
 package com.kevi793.EventStorageAndProcessing;
 
+import java.nio.charset.StandardCharsets;
+
 public class Util {
 
+    private static final byte[] NEW_LINE_DELIMITER_BYTES = Constant.NEW_LINE_DELIMITER.getBytes(StandardCharsets.UTF_8);
+
     public static String appendNewLine(String input) {
         return input + Constant.NEW_LINE_DELIMITER;
     }
 
+    public static byte[] appendNewLine(byte[] input) {
+        byte[] output = new byte[input.length + NEW_LINE_DELIMITER_BYTES.length];
+        System.arraycopy(input, 0, output, 0, input.length);
+        System.arraycopy(NEW_LINE_DELIMITER_BYTES, 0, output, input.length, NEW_LINE_DELIMITER_BYTES.length);
+        return output;
+    }
+
 }
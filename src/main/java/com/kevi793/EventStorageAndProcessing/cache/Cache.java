@@ -25,4 +25,12 @@ public interface Cache<K, V> {
      */
     V get(K key);
 
+    /**
+     * Remove the key from the cache.
+     *
+     * @param key The key.
+     * @return Value that was stored for the input key, null if key was not present.
+     */
+    V remove(K key);
+
 }
@@ -0,0 +1,30 @@
+package com.kevi793.EventStorageAndProcessing.cache;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Snapshot of the counters of a cache.
+ */
+@Getter
+@ToString
+public class CacheStats {
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+    private final long weight;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public double getHitRate() {
+        long requestCount = this.hitCount + this.missCount;
+        return requestCount == 0 ? 1.0 : (double) this.hitCount / requestCount;
+    }
+}
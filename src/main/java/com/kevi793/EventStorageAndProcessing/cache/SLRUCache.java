@@ -0,0 +1,238 @@
+package com.kevi793.EventStorageAndProcessing.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * A segmented LRU implementation of Cache.
+ * New keys enter a probation segment and are promoted to a protected segment when they are hit again, so a scan
+ * over many keys that are used once only evicts other probation keys and leaves the keys in regular use alone.
+ * When the cache holds more than maxSize keys or more than maxWeight, the least recently used probation key is
+ * evicted first, then the least recently used protected key. The eviction listener is called for evicted keys
+ * outside of the cache lock, it is not called for keys removed explicitly.
+ */
+@Slf4j
+public class SLRUCache<K, V> implements Cache<K, V> {
+
+    private static final double PROTECTED_SEGMENT_RATIO = 0.8;
+
+    private final int maxSize;
+    private final int maxProtectedSize;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final BiConsumer<K, V> evictionListener;
+
+    private final LinkedHashMap<K, WeightedValue<V>> probationSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, WeightedValue<V>> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public SLRUCache(int maxSize) {
+        this(maxSize, Long.MAX_VALUE, value -> 0, (key, value) -> {
+        });
+    }
+
+    /**
+     * @param maxSize          Maximum number of keys.
+     * @param maxWeight        Maximum total weight of the values.
+     * @param weigher          Weight of a value, computed when it is put or reweighed.
+     * @param evictionListener Called with every evicted key and value.
+     */
+    public SLRUCache(int maxSize, long maxWeight, ToLongFunction<V> weigher, BiConsumer<K, V> evictionListener) {
+        this.maxSize = maxSize;
+        this.maxProtectedSize = (int) (maxSize * PROTECTED_SEGMENT_RATIO);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        List<Map.Entry<K, WeightedValue<V>>> evicted;
+        synchronized (this) {
+            WeightedValue<V> weightedValue = new WeightedValue<>(value, this.weigher.applyAsLong(value));
+            WeightedValue<V> previous = this.protectedSegment.containsKey(key)
+                    ? this.protectedSegment.put(key, weightedValue)
+                    : this.probationSegment.put(key, weightedValue);
+
+            if (previous != null) {
+                log.debug("Updating value for key: {}", key.toString());
+                this.weight -= previous.weight;
+            } else {
+                log.debug("Key added in cache: {}", key.toString());
+            }
+            this.weight += weightedValue.weight;
+
+            evicted = this.evictIfNeeded(key);
+        }
+
+        this.notifyEvicted(evicted);
+    }
+
+    @Override
+    public synchronized V get(K key) {
+        WeightedValue<V> weightedValue = this.protectedSegment.get(key);
+        if (weightedValue == null) {
+            weightedValue = this.probationSegment.remove(key);
+            if (weightedValue == null) {
+                log.debug("Cache Miss for key: {}", key);
+                this.missCount.increment();
+                return null;
+            }
+
+            this.promote(key, weightedValue);
+        }
+
+        log.debug("Cache Hit for key: {}", key.toString());
+        this.hitCount.increment();
+        return weightedValue.value;
+    }
+
+    @Override
+    public synchronized V remove(K key) {
+        WeightedValue<V> weightedValue = this.protectedSegment.remove(key);
+        if (weightedValue == null) {
+            weightedValue = this.probationSegment.remove(key);
+        }
+        if (weightedValue == null) {
+            return null;
+        }
+
+        this.weight -= weightedValue.weight;
+        log.debug("Key removed from cache: {}", key.toString());
+        return weightedValue.value;
+    }
+
+    /**
+     * Weigh the value of a key again after it has grown or shrunk, and evict other keys if the cache no longer fits
+     * its limits.
+     */
+    public void reweigh(K key) {
+        List<Map.Entry<K, WeightedValue<V>>> evicted;
+        synchronized (this) {
+            LinkedHashMap<K, WeightedValue<V>> cacheSegment = this.protectedSegment.containsKey(key) ? this.protectedSegment : this.probationSegment;
+            WeightedValue<V> weightedValue = cacheSegment.get(key);
+            if (weightedValue == null) {
+                return;
+            }
+
+            long weight = this.weigher.applyAsLong(weightedValue.value);
+            if (weight == weightedValue.weight) {
+                return;
+            }
+
+            cacheSegment.put(key, new WeightedValue<>(weightedValue.value, weight));
+            this.weight += weight - weightedValue.weight;
+            log.debug("Reweighed key {} from {} to {}.", key, weightedValue.weight, weight);
+            evicted = this.evictIfNeeded(key);
+        }
+
+        this.notifyEvicted(evicted);
+    }
+
+    /**
+     * Remove every key, without calling the eviction listener.
+     *
+     * @return The values removed.
+     */
+    public synchronized List<V> clear() {
+        List<V> values = new ArrayList<>(this.probationSegment.size() + this.protectedSegment.size());
+        for (WeightedValue<V> weightedValue : this.probationSegment.values()) {
+            values.add(weightedValue.value);
+        }
+        for (WeightedValue<V> weightedValue : this.protectedSegment.values()) {
+            values.add(weightedValue.value);
+        }
+
+        this.probationSegment.clear();
+        this.protectedSegment.clear();
+        this.weight = 0;
+        log.debug("Cleared the cache of {} keys.", values.size());
+        return values;
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(this.hitCount.sum(), this.missCount.sum(), this.evictionCount.sum(),
+                this.probationSegment.size() + this.protectedSegment.size(), this.weight);
+    }
+
+    /**
+     * Move a probation key to the protected segment, demoting the least recently used protected key if it is full.
+     */
+    private void promote(K key, WeightedValue<V> weightedValue) {
+        this.protectedSegment.put(key, weightedValue);
+        if (this.protectedSegment.size() > this.maxProtectedSize) {
+            Iterator<Map.Entry<K, WeightedValue<V>>> iterator = this.protectedSegment.entrySet().iterator();
+            Map.Entry<K, WeightedValue<V>> eldest = iterator.next();
+            iterator.remove();
+            this.probationSegment.put(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    /**
+     * Evict until the cache fits its limits. The key that was just put is kept even if it alone exceeds the weight.
+     */
+    private List<Map.Entry<K, WeightedValue<V>>> evictIfNeeded(K keyJustPut) {
+        List<Map.Entry<K, WeightedValue<V>>> evicted = new ArrayList<>();
+
+        while (this.probationSegment.size() + this.protectedSegment.size() > this.maxSize || this.weight > this.maxWeight) {
+            Map.Entry<K, WeightedValue<V>> eldest = this.findEldest(this.probationSegment, keyJustPut);
+            if (eldest == null) {
+                eldest = this.findEldest(this.protectedSegment, keyJustPut);
+            }
+            if (eldest == null) {
+                break;
+            }
+
+            log.debug("Cache is full. Need to evict: {}", eldest.getKey().toString());
+            this.probationSegment.remove(eldest.getKey());
+            this.protectedSegment.remove(eldest.getKey());
+            this.weight -= eldest.getValue().weight;
+            this.evictionCount.increment();
+            evicted.add(eldest);
+        }
+
+        return evicted;
+    }
+
+    private Map.Entry<K, WeightedValue<V>> findEldest(LinkedHashMap<K, WeightedValue<V>> cacheSegment, K keyToKeep) {
+        for (Map.Entry<K, WeightedValue<V>> entry : cacheSegment.entrySet()) {
+            if (!entry.getKey().equals(keyToKeep)) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    private void notifyEvicted(List<Map.Entry<K, WeightedValue<V>>> evicted) {
+        for (Map.Entry<K, WeightedValue<V>> entry : evicted) {
+            try {
+                this.evictionListener.accept(entry.getKey(), entry.getValue().value);
+            } catch (RuntimeException e) {
+                log.error("Eviction listener failed for key {}. Exception is {}.", entry.getKey(), e);
+            }
+        }
+    }
+
+    private static class WeightedValue<V> {
+        private final V value;
+        private final long weight;
+
+        private WeightedValue(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
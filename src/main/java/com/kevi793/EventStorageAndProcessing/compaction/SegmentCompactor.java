@@ -0,0 +1,79 @@
+package com.kevi793.EventStorageAndProcessing.compaction;
+
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentManifest;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentName;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+
+/**
+ * Compresses the log files of the sealed segments of a store.
+ * Sealed segments are taken from the manifest in order, from the first one not known to be compressed, so a pass
+ * with nothing to compress touches no segment.
+ */
+@Slf4j
+public class SegmentCompactor extends Thread {
+
+    private final EventStore<?> eventStore;
+    private final long compactionInterval;
+    // Number of events before the first sealed segment that may not be compressed yet.
+    private long numberOfEventsBeforeNextSegmentToCompress;
+
+    public SegmentCompactor(EventStore<?> eventStore, long compactionInterval) {
+        this.eventStore = eventStore;
+        this.compactionInterval = compactionInterval;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Segment compactor thread is interrupted. Shutting down!");
+                break;
+            }
+
+            log.debug("Trying to find any segment to be compressed.");
+            this.compressSealedSegments();
+
+            try {
+                log.debug("Going to sleep for {}.", this.compactionInterval);
+                Thread.sleep(this.compactionInterval);
+            } catch (InterruptedException e) {
+                log.info("Segment compactor thread is interrupted.");
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Compress the sealed segments from the first one not known to be compressed. The segments after one that fails
+     * are still compressed, but the next pass starts again from the failed one.
+     */
+    private void compressSealedSegments() {
+        boolean compressedSoFar = true;
+        SegmentManifest.Entry segment = this.eventStore.getSealedSegmentAfter(new SegmentName(this.numberOfEventsBeforeNextSegmentToCompress), 0);
+        while (segment != null && !Thread.currentThread().isInterrupted()) {
+            SegmentName segmentName = segment.getSegmentName();
+            try {
+                // The active segment is in the manifest while it is rolled, it is compressed once it is sealed.
+                if (!this.eventStore.compressSegment(segmentName)) {
+                    break;
+                }
+                if (compressedSoFar) {
+                    this.numberOfEventsBeforeNextSegmentToCompress = segment.getNumberOfEventsBeforeNextSegment();
+                }
+            } catch (ClosedByInterruptException e) {
+                log.info("Segment compactor thread is interrupted while compressing segment {}.", segmentName);
+                break;
+            } catch (IOException e) {
+                log.error("Failed to compress segment {}. Will retry after some time. Exception is {}.", segmentName, e);
+                compressedSoFar = false;
+            }
+
+            segment = this.eventStore.getSealedSegmentAfter(new SegmentName(segment.getNumberOfEventsBeforeNextSegment()), 0);
+        }
+    }
+}
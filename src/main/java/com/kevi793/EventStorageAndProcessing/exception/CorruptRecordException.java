@@ -0,0 +1,13 @@
+package com.kevi793.EventStorageAndProcessing.exception;
+
+import java.io.IOException;
+
+public class CorruptRecordException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CorruptRecordException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.kevi793.EventStorageAndProcessing.exception;
+
+import com.kevi793.EventStorageAndProcessing.store.OffsetRange;
+
+import java.io.IOException;
+
+/**
+ * A batch failed part way. The events of the appended range are in the store and keep their offsets, the others
+ * are not written.
+ */
+public class PartialAppendException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long firstOffset;
+    private final long lastOffset;
+
+    public PartialAppendException(String message, OffsetRange appendedOffsetRange, Throwable cause) {
+        super(message, cause);
+        this.firstOffset = appendedOffsetRange.getFirstOffset();
+        this.lastOffset = appendedOffsetRange.getLastOffset();
+    }
+
+    public OffsetRange getAppendedOffsetRange() {
+        return new OffsetRange(this.firstOffset, this.lastOffset);
+    }
+
+}
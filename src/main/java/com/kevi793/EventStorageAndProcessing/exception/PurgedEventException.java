@@ -0,0 +1,11 @@
+package com.kevi793.EventStorageAndProcessing.exception;
+
+public class PurgedEventException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PurgedEventException(String message) {
+        super(message);
+    }
+
+}
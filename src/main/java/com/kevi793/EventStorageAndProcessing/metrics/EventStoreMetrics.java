@@ -0,0 +1,195 @@
+package com.kevi793.EventStorageAndProcessing.metrics;
+
+import com.kevi793.EventStorageAndProcessing.cache.CacheStats;
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of a store. The store records into it as it goes, the values that the store already keeps, like the
+ * consumer lag, are read from the store when asked for. Available through {@link EventStore#getMetrics()} and
+ * as an MXBean named after the log directory of the store, so the partitions of a store get one each.
+ */
+@Slf4j
+public class EventStoreMetrics implements EventStoreMetricsMXBean {
+
+    public static final String DOMAIN = "com.kevi793.EventStorageAndProcessing";
+
+    private final String name;
+    private final EventStore<?> eventStore;
+    private final RateMeter eventsWritten = new RateMeter();
+    private final RateMeter bytesWritten = new RateMeter();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram serializationLatency = new LatencyHistogram();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LongAdder segmentsRolled = new LongAdder();
+    private final LongAdder segmentsDeleted = new LongAdder();
+    private ObjectName objectName;
+
+    public EventStoreMetrics(String name, EventStore<?> eventStore) {
+        this.name = name;
+        this.eventStore = eventStore;
+    }
+
+    /**
+     * Register the MXBean of the store. A store still open on the same directory keeps its MXBean, and the error
+     * is logged, as two stores must not be open on one directory; a store is closed to unregister its MXBean.
+     * The store works the same when the registration fails, so failures are only logged.
+     */
+    public void register(Path logDirPath) {
+        ObjectName objectName;
+        try {
+            objectName = new ObjectName(String.format("%s:type=EventStore,name=%s,path=%s", DOMAIN,
+                    ObjectName.quote(this.name), ObjectName.quote(logDirPath.toString())));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            log.error("Metrics of {} are not registered, another store open on {} has them. Close it before opening the directory again.",
+                    this.name, logDirPath);
+            return;
+        } catch (JMException e) {
+            log.error("Failed to register the metrics of {}. Exception is {}.", this.name, e);
+            return;
+        }
+
+        this.objectName = objectName;
+        log.debug("Registered the metrics of {} as {}.", this.name, this.objectName);
+    }
+
+    /**
+     * Unregister the MXBean of the store, if it was registered.
+     */
+    public void unregister() {
+        if (this.objectName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            log.debug("Unregistered the metrics of {}.", this.name);
+        } catch (InstanceNotFoundException e) {
+            log.debug("Metrics of {} are not registered.", this.name);
+        } catch (JMException e) {
+            log.error("Failed to unregister the metrics of {}. Exception is {}.", this.name, e);
+        }
+        this.objectName = null;
+    }
+
+    public void markWritten(long numberOfEvents, long numberOfBytes) {
+        this.eventsWritten.mark(numberOfEvents);
+        this.bytesWritten.mark(numberOfBytes);
+    }
+
+    /**
+     * @param startTimeInNanos Value of System.nanoTime() when the write started.
+     */
+    public void recordWrite(long startTimeInNanos) {
+        this.writeLatency.recordSince(startTimeInNanos);
+    }
+
+    public void recordSerialization(long startTimeInNanos) {
+        this.serializationLatency.recordSince(startTimeInNanos);
+    }
+
+    public void recordRead(long startTimeInNanos) {
+        this.readLatency.recordSince(startTimeInNanos);
+    }
+
+    public void markSegmentRolled() {
+        this.segmentsRolled.increment();
+    }
+
+    public void markSegmentDeleted() {
+        this.segmentsDeleted.increment();
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public long getEventsWritten() {
+        return this.eventsWritten.getCount();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten.getCount();
+    }
+
+    @Override
+    public double getEventsWrittenPerSecond() {
+        return this.eventsWritten.getRatePerSecond();
+    }
+
+    @Override
+    public double getBytesWrittenPerSecond() {
+        return this.bytesWritten.getRatePerSecond();
+    }
+
+    @Override
+    public LatencySnapshot getWriteLatency() {
+        return this.writeLatency.getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getSerializationLatency() {
+        return this.serializationLatency.getSnapshot();
+    }
+
+    @Override
+    public LatencySnapshot getReadLatency() {
+        return this.readLatency.getSnapshot();
+    }
+
+    @Override
+    public long getSegmentsRolled() {
+        return this.segmentsRolled.sum();
+    }
+
+    @Override
+    public long getSegmentsDeleted() {
+        return this.segmentsDeleted.sum();
+    }
+
+    @Override
+    public double getSegmentCacheHitRate() {
+        return this.eventStore.getSegmentCacheStats().getHitRate();
+    }
+
+    @Override
+    public double getCompressedBlockCacheHitRate() {
+        CacheStats compressedBlockCacheStats = this.eventStore.getCompressedBlockCacheStats();
+        return compressedBlockCacheStats == null ? 1.0 : compressedBlockCacheStats.getHitRate();
+    }
+
+    @Override
+    public long getHighWatermark() {
+        return this.eventStore.getHighWatermark();
+    }
+
+    @Override
+    public Map<String, Long> getConsumerLag() {
+        long highWatermark = this.eventStore.getHighWatermark();
+        Map<String, Long> consumerLag = new LinkedHashMap<>();
+        for (String consumerGroupName : this.eventStore.getConsumerGroupNames()) {
+            consumerLag.put(consumerGroupName, Math.max(0, highWatermark - this.eventStore.getNumberOfEventsProcessedSoFar(consumerGroupName)));
+        }
+
+        return consumerLag;
+    }
+
+    @Override
+    public long getReplicationLag() {
+        return this.eventStore.getReplicationLag();
+    }
+}
@@ -0,0 +1,55 @@
+package com.kevi793.EventStorageAndProcessing.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of a store, registered under {@link EventStoreMetrics#DOMAIN} with type EventStore.
+ * Latencies are in microseconds and rates are per second over the last few seconds.
+ */
+public interface EventStoreMetricsMXBean {
+
+    String getName();
+
+    long getEventsWritten();
+
+    /**
+     * Bytes of the serialized payloads written.
+     */
+    long getBytesWritten();
+
+    double getEventsWrittenPerSecond();
+
+    double getBytesWrittenPerSecond();
+
+    /**
+     * Time of a write, from the payload to the event being as durable as the durability mode of the store promises.
+     */
+    LatencySnapshot getWriteLatency();
+
+    /**
+     * Time spent turning payloads into bytes, part of the write latency.
+     */
+    LatencySnapshot getSerializationLatency();
+
+    LatencySnapshot getReadLatency();
+
+    long getSegmentsRolled();
+
+    long getSegmentsDeleted();
+
+    double getSegmentCacheHitRate();
+
+    /**
+     * Hit rate of the decompressed blocks, 1 when the store is not compressed.
+     */
+    double getCompressedBlockCacheHitRate();
+
+    long getHighWatermark();
+
+    /**
+     * Number of events written that a consumer group has yet to process, by consumer group.
+     */
+    Map<String, Long> getConsumerLag();
+
+    long getReplicationLag();
+}
@@ -0,0 +1,100 @@
+package com.kevi793.EventStorageAndProcessing.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds with a fixed set of log-linear buckets, in the manner of HdrHistogram.
+ * Values below 2^SUB_BUCKET_BITS get a bucket each, every higher power of two is split into 2^SUB_BUCKET_BITS
+ * buckets, so a recorded value is off by at most 1/2^SUB_BUCKET_BITS. Recording only increments counters, it
+ * neither allocates nor locks.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int NUMBER_OF_BUCKETS = SUB_BUCKET_COUNT + (Long.SIZE - 1 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(NUMBER_OF_BUCKETS);
+    private final LongAdder totalInNanos = new LongAdder();
+    private final AtomicLong maxInNanos = new AtomicLong();
+
+    public void record(long latencyInNanos) {
+        long value = Math.max(0, latencyInNanos);
+        this.counts.incrementAndGet(bucketOf(value));
+        this.totalInNanos.add(value);
+
+        long max = this.maxInNanos.get();
+        while (value > max && !this.maxInNanos.compareAndSet(max, value)) {
+            max = this.maxInNanos.get();
+        }
+    }
+
+    /**
+     * Record the time elapsed since startTimeInNanos, a value of System.nanoTime().
+     */
+    public void recordSince(long startTimeInNanos) {
+        this.record(System.nanoTime() - startTimeInNanos);
+    }
+
+    public LatencySnapshot getSnapshot() {
+        long[] counts = new long[NUMBER_OF_BUCKETS];
+        long count = 0;
+        for (int i = 0; i < NUMBER_OF_BUCKETS; i++) {
+            counts[i] = this.counts.get(i);
+            count += counts[i];
+        }
+
+        // The highest value of a bucket may be above the highest value recorded.
+        long maxInNanos = this.maxInNanos.get();
+        double meanInNanos = count == 0 ? 0 : (double) this.totalInNanos.sum() / count;
+        return new LatencySnapshot(count, toMicros(meanInNanos), toMicros(Math.min(maxInNanos, valueAtPercentile(counts, count, 50))),
+                toMicros(Math.min(maxInNanos, valueAtPercentile(counts, count, 90))), toMicros(Math.min(maxInNanos, valueAtPercentile(counts, count, 99))),
+                toMicros(Math.min(maxInNanos, valueAtPercentile(counts, count, 99.9))), toMicros(maxInNanos));
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    /**
+     * Highest value that falls in a bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+
+        int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        long subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+    private static long valueAtPercentile(long[] counts, long count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+
+        return highestValueOf(counts.length - 1);
+    }
+
+    private static double toMicros(double nanos) {
+        return nanos / 1000;
+    }
+}
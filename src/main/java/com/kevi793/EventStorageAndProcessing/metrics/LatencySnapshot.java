@@ -0,0 +1,33 @@
+package com.kevi793.EventStorageAndProcessing.metrics;
+
+import lombok.Getter;
+import lombok.ToString;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of a latency histogram, in microseconds.
+ */
+@Getter
+@ToString
+public class LatencySnapshot {
+    private final long count;
+    private final double meanInMicros;
+    private final double p50InMicros;
+    private final double p90InMicros;
+    private final double p99InMicros;
+    private final double p999InMicros;
+    private final double maxInMicros;
+
+    @ConstructorProperties({"count", "meanInMicros", "p50InMicros", "p90InMicros", "p99InMicros", "p999InMicros", "maxInMicros"})
+    public LatencySnapshot(long count, double meanInMicros, double p50InMicros, double p90InMicros, double p99InMicros,
+                           double p999InMicros, double maxInMicros) {
+        this.count = count;
+        this.meanInMicros = meanInMicros;
+        this.p50InMicros = p50InMicros;
+        this.p90InMicros = p90InMicros;
+        this.p99InMicros = p99InMicros;
+        this.p999InMicros = p999InMicros;
+        this.maxInMicros = maxInMicros;
+    }
+}
@@ -0,0 +1,65 @@
+package com.kevi793.EventStorageAndProcessing.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter that also knows its rate per second over the last WINDOW_IN_SECONDS full seconds.
+ * Every second has a slot that is reused once the window has moved past it. Marks racing with the reuse of a slot
+ * may be left out of the rate, never out of the count.
+ */
+public class RateMeter {
+
+    private static final int WINDOW_IN_SECONDS = 10;
+    private static final int NUMBER_OF_SLOTS = WINDOW_IN_SECONDS + 1;
+
+    private final LongAdder count = new LongAdder();
+    private final AtomicLongArray slotCounts = new AtomicLongArray(NUMBER_OF_SLOTS);
+    private final AtomicLongArray slotSeconds = new AtomicLongArray(NUMBER_OF_SLOTS);
+    private final long startSecond = currentSecond();
+
+    public RateMeter() {
+        for (int slot = 0; slot < NUMBER_OF_SLOTS; slot++) {
+            this.slotSeconds.set(slot, Long.MIN_VALUE);
+        }
+    }
+
+    public void mark(long n) {
+        this.count.add(n);
+
+        long second = currentSecond();
+        int slot = (int) Math.floorMod(second, (long) NUMBER_OF_SLOTS);
+        long slotSecond = this.slotSeconds.get(slot);
+        if (slotSecond != second && this.slotSeconds.compareAndSet(slot, slotSecond, second)) {
+            this.slotCounts.set(slot, 0);
+        }
+        this.slotCounts.addAndGet(slot, n);
+    }
+
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    public double getRatePerSecond() {
+        long currentSecond = currentSecond();
+        long windowInSeconds = Math.min(WINDOW_IN_SECONDS, currentSecond - this.startSecond);
+        if (windowInSeconds <= 0) {
+            return 0;
+        }
+
+        long countInWindow = 0;
+        for (int slot = 0; slot < NUMBER_OF_SLOTS; slot++) {
+            long slotSecond = this.slotSeconds.get(slot);
+            if (slotSecond < currentSecond && slotSecond >= currentSecond - windowInSeconds) {
+                countInWindow += this.slotCounts.get(slot);
+            }
+        }
+
+        return (double) countInWindow / windowInSeconds;
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+}
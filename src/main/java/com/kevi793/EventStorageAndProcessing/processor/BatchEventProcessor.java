@@ -0,0 +1,174 @@
+package com.kevi793.EventStorageAndProcessing.processor;
+
+import com.kevi793.EventStorageAndProcessing.store.Event;
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.ProcessedEventsTracker;
+import com.kevi793.EventStorageAndProcessing.store.segment.Segment;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hands the events to the consumer in batches.
+ * A batch is handed over when it has maxBatchSize events, or when maxBatchWaitTimeInMs has passed since its first
+ * event and no more events are available. Events still in the tail buffer of the store are read from memory, older
+ * ones sequentially through a {@link SegmentReader}. The tracker is written once per batch. When it has caught up
+ * with the store, it waits for the next write. When its tracker is reset, the batch being filled is dropped and it
+ * moves to the new position. An event below the high watermark that cannot be read, for example because its segment
+ * was deleted, is an error, retried after waitTimeInMs.
+ */
+@Slf4j
+public class BatchEventProcessor<T> extends Thread {
+    private final Consumer<List<T>> batchConsumer;
+    private final EventStore<T> eventStore;
+    private final ProcessedEventsTracker processedEventsTracker;
+    private final int maxBatchSize;
+    private final long maxBatchWaitTimeInNs;
+    private final long waitTimeInMs;
+    private long eventNumber;
+    private SegmentReader segmentReader;
+
+    public BatchEventProcessor(ProcessedEventsTracker tracker, Consumer<List<T>> batchConsumer, EventStore<T> eventStore,
+                               int maxBatchSize, long maxBatchWaitTimeInMs, long waitTimeInMs) throws IOException {
+        this.processedEventsTracker = tracker;
+        this.batchConsumer = batchConsumer;
+        this.eventStore = eventStore;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchWaitTimeInNs = TimeUnit.MILLISECONDS.toNanos(maxBatchWaitTimeInMs);
+        this.waitTimeInMs = waitTimeInMs;
+        this.eventNumber = tracker.getNumberOfEventsProcessedSoFar();
+    }
+
+    @Override
+    public void run() {
+        List<T> batch = new ArrayList<>(this.maxBatchSize);
+        long batchStartTime = 0;
+
+        while (true) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Batch event processor thread is interrupted. Shutting down!");
+                break;
+            }
+
+            try {
+                long wakeUpCount = this.eventStore.getWakeUpCount();
+                // Read before the event, so an event written in between is not taken for a missing one.
+                long highWatermark = this.eventStore.getHighWatermark();
+                Long resetEventNumber = this.processedEventsTracker.pollReset();
+                if (resetEventNumber != null) {
+                    log.info("Moving from eventNumber {} to eventNumber {} as the tracker was reset. Dropping a batch of {} events.",
+                            this.eventNumber, resetEventNumber, batch.size());
+                    this.closeSegmentReader();
+                    this.eventNumber = resetEventNumber;
+                    batch = new ArrayList<>(this.maxBatchSize);
+                }
+
+                T payload = this.next();
+
+                if (payload != null) {
+                    if (batch.isEmpty()) {
+                        batchStartTime = System.nanoTime();
+                    }
+                    batch.add(payload);
+                }
+
+                boolean batchIsFull = batch.size() == this.maxBatchSize;
+                boolean batchWaitIsOver = !batch.isEmpty() && System.nanoTime() - batchStartTime >= this.maxBatchWaitTimeInNs;
+                if (batchIsFull || (payload == null && batchWaitIsOver)) {
+                    log.debug("Calling consumer for a batch of {} events ending before eventNumber {}.", batch.size(), this.eventNumber);
+                    this.batchConsumer.accept(batch);
+                    this.processedEventsTracker.write(this.eventNumber);
+                    batch = new ArrayList<>(this.maxBatchSize);
+                } else if (payload == null && this.eventNumber < highWatermark) {
+                    log.error("EventNumber {} is below the high watermark {} but cannot be read. Retrying in {} ms.",
+                            this.eventNumber, highWatermark, this.waitTimeInMs);
+                    this.closeSegmentReader();
+                    Thread.sleep(this.waitTimeInMs);
+                } else if (payload == null) {
+                    log.debug("The eventNumber {} does not exist.", this.eventNumber);
+                    if (batch.isEmpty()) {
+                        this.processedEventsTracker.flush();
+                        this.eventStore.awaitEvent(this.eventNumber, wakeUpCount, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                    } else {
+                        long remainingBatchWaitTimeInNs = this.maxBatchWaitTimeInNs - (System.nanoTime() - batchStartTime);
+                        this.eventStore.awaitEvent(this.eventNumber, wakeUpCount, remainingBatchWaitTimeInNs, TimeUnit.NANOSECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                log.info("Batch event processor thread is interrupted.");
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                log.error("Error occurred while processing eventNumber {}. Exception is {}.", this.eventNumber, e);
+                this.closeSegmentReader();
+                try {
+                    Thread.sleep(this.waitTimeInMs);
+                } catch (InterruptedException interruptedException) {
+                    log.info("Batch event processor thread is interrupted.");
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        this.closeSegmentReader();
+    }
+
+    private T next() throws IOException {
+        T payloadFromTail = this.eventStore.readFromTail(this.eventNumber);
+        if (payloadFromTail != null) {
+            // The segment reader would be behind now, it is opened again if the tail buffer wraps.
+            this.closeSegmentReader();
+            this.eventNumber++;
+            return payloadFromTail;
+        }
+
+        if (this.segmentReader == null && !this.openSegmentReader()) {
+            return null;
+        }
+
+        Event event = this.segmentReader.next();
+        if (event == null) {
+            // The reader has caught up with its segment, move on if a later segment holds the next event.
+            Segment segment = this.eventStore.getSegment(this.eventNumber);
+            if (segment == null || segment.getSegmentName().equals(this.segmentReader.getSegment().getSegmentName())) {
+                return null;
+            }
+
+            this.closeSegmentReader();
+            return this.next();
+        }
+
+        T payload = this.eventStore.getPayload(event);
+        this.eventNumber++;
+        return payload;
+    }
+
+    private boolean openSegmentReader() throws IOException {
+        Segment segment = this.eventStore.getSegment(this.eventNumber);
+        if (segment == null) {
+            return false;
+        }
+
+        int positionWithinSegment = (int) (this.eventNumber - segment.getSegmentName().getNumberOfEventsBefore());
+        this.segmentReader = new SegmentReader(segment, positionWithinSegment);
+        return true;
+    }
+
+    private void closeSegmentReader() {
+        if (this.segmentReader == null) {
+            return;
+        }
+
+        try {
+            this.segmentReader.close();
+        } catch (IOException e) {
+            log.error("Failed to close segment reader. Exception is {}.", e);
+        }
+        this.segmentReader = null;
+    }
+}
@@ -5,8 +5,15 @@ import com.kevi793.EventStorageAndProcessing.store.ProcessedEventsTracker;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+/**
+ * Hands the events to the consumer one by one. When it has caught up with the store, it waits for the next write.
+ * When its tracker is reset, it moves to the new position before the next event.
+ * An event below the high watermark that cannot be read, for example because its segment was deleted, is an error.
+ * waitTimeInMs is the time to wait before retrying after an error.
+ */
 @Slf4j
 public class EventProcessor<T> extends Thread {
     private final Consumer<T> consumer;
@@ -33,19 +40,37 @@ public class EventProcessor<T> extends Thread {
             }
 
             try {
+                long wakeUpCount = this.eventStore.getWakeUpCount();
+                // Read before the event, so an event written in between is not taken for a missing one.
+                long highWatermark = this.eventStore.getHighWatermark();
+                Long resetEventNumber = this.processedEventsTracker.pollReset();
+                if (resetEventNumber != null) {
+                    log.info("Moving from eventNumber {} to eventNumber {} as the tracker was reset.", this.eventNumber, resetEventNumber);
+                    this.eventNumber = resetEventNumber;
+                }
+
                 log.debug("Trying to read eventNumber {}", this.eventNumber);
                 T payload = this.eventStore.read(this.eventNumber);
 
-                if (payload == null) {
-                    log.debug("The eventNumber {} does not exist.", this.eventNumber);
+                if (payload == null && this.eventNumber < highWatermark) {
+                    log.error("EventNumber {} is below the high watermark {} but cannot be read. Retrying in {} ms.",
+                            this.eventNumber, highWatermark, this.waitTimeInMs);
+                    this.processedEventsTracker.flush();
                     Thread.sleep(this.waitTimeInMs);
+                } else if (payload == null) {
+                    log.debug("The eventNumber {} does not exist.", this.eventNumber);
+                    this.processedEventsTracker.flush();
+                    this.eventStore.awaitEvent(this.eventNumber, wakeUpCount, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
                 } else {
                     log.debug("Calling consumer for eventNumber {}.", eventNumber);
                     this.consumer.accept(payload);
                     eventNumber++;
                     this.processedEventsTracker.write(this.eventNumber);
                 }
-            } catch (IOException | InterruptedException e) {
+            } catch (InterruptedException e) {
+                log.info("Event processor thread is interrupted.");
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
                 log.error("Error occurred while processing eventNumber {}. Exception is {}.", eventNumber, e);
                 try {
                     Thread.sleep(this.waitTimeInMs);
@@ -0,0 +1,316 @@
+package com.kevi793.EventStorageAndProcessing.processor;
+
+import com.kevi793.EventStorageAndProcessing.exception.PurgedEventException;
+import com.kevi793.EventStorageAndProcessing.store.Event;
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.segment.Segment;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentName;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentReader;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Replays a range of events of a store to a consumer, reading and decoding its segments in parallel on a fork/join pool.
+ * The range is split at the segment boundaries, and segments into chunks of eventsPerTask events, each read in order
+ * through its own {@link SegmentReader}. Every replay runs on a pool of its own, shut down when it ends, unless the
+ * replayer is given a pool to share.
+ * <p>
+ * The replay is not a consumer group: it reads no processed events tracker and writes none, so the live processors
+ * are left where they are. Segments are purged without waiting for it, in which case it fails with
+ * {@link PurgedEventException}.
+ */
+@Slf4j
+public class SegmentReplayer<T> {
+
+    public static final int DEFAULT_EVENTS_PER_TASK = 8 * 1024;
+
+    private final EventStore<T> eventStore;
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int eventsPerTask;
+
+    public SegmentReplayer(EventStore<T> eventStore, int parallelism) {
+        this(eventStore, parallelism, DEFAULT_EVENTS_PER_TASK);
+    }
+
+    public SegmentReplayer(EventStore<T> eventStore, int parallelism, int eventsPerTask) {
+        this(eventStore, null, parallelism, eventsPerTask);
+    }
+
+    /**
+     * @param pool Pool the replays run on, left running after them. Its parallelism is the number of lanes of a
+     *             replay in order per key.
+     */
+    public SegmentReplayer(EventStore<T> eventStore, ForkJoinPool pool, int eventsPerTask) {
+        this(eventStore, pool, pool.getParallelism(), eventsPerTask);
+    }
+
+    private SegmentReplayer(EventStore<T> eventStore, ForkJoinPool pool, int parallelism, int eventsPerTask) {
+        if (parallelism <= 0 || eventsPerTask <= 0) {
+            throw new IllegalArgumentException(String.format("Parallelism %d and events per task %d must be positive.", parallelism, eventsPerTask));
+        }
+
+        this.eventStore = eventStore;
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.eventsPerTask = eventsPerTask;
+    }
+
+    /**
+     * Replay the events from fromEventNumber up to, not including, toEventNumber. The consumer is called from
+     * parallelism threads at once, and events are only in order within a chunk.
+     *
+     * @param toEventNumber End of the range, lowered to the high watermark.
+     */
+    public void replay(long fromEventNumber, long toEventNumber, Consumer<T> consumer) throws IOException {
+        List<Chunk> chunks = this.split(fromEventNumber, toEventNumber);
+        log.debug("Replaying eventNumbers {} to {} in {} chunks with parallelism {}.", fromEventNumber, toEventNumber, chunks.size(), this.parallelism);
+        ForkJoinPool pool = this.openPool();
+        try {
+            this.invoke(pool, new ReplayTask(chunks, 0, chunks.size(), consumer));
+        } finally {
+            this.closePool(pool);
+        }
+    }
+
+    /**
+     * Replay the events from fromEventNumber up to, not including, toEventNumber, the events of a key in order.
+     * Windows of parallelism chunks are decoded in parallel, then each of parallelism lanes consumes the events of
+     * the keys hashed to it in order, so the consumer is called for a key from one thread at a time.
+     *
+     * @param toEventNumber End of the range, lowered to the high watermark.
+     * @param keyExtractor  Key of a payload, null keys go to the same lane.
+     */
+    public void replayOrderedByKey(long fromEventNumber, long toEventNumber, Consumer<T> consumer,
+                                   Function<? super T, ?> keyExtractor) throws IOException {
+        List<Chunk> chunks = this.split(fromEventNumber, toEventNumber);
+        log.debug("Replaying eventNumbers {} to {} in {} chunks with parallelism {}, in order per key.", fromEventNumber, toEventNumber, chunks.size(), this.parallelism);
+
+        ForkJoinPool pool = this.openPool();
+        try {
+            for (int windowStart = 0; windowStart < chunks.size(); windowStart += this.parallelism) {
+                List<Chunk> window = chunks.subList(windowStart, Math.min(chunks.size(), windowStart + this.parallelism));
+                this.invoke(pool, new DecodeTask(window, 0, window.size(), keyExtractor));
+                this.invoke(pool, new DispatchTask(window, 0, this.parallelism, consumer));
+                for (Chunk chunk : window) {
+                    chunk.lanes = null;
+                }
+            }
+        } finally {
+            this.closePool(pool);
+        }
+    }
+
+    private ForkJoinPool openPool() {
+        return this.pool != null ? this.pool : new ForkJoinPool(this.parallelism);
+    }
+
+    private void closePool(ForkJoinPool pool) {
+        if (pool != this.pool) {
+            pool.shutdown();
+        }
+    }
+
+    private void invoke(ForkJoinPool pool, RecursiveAction task) throws IOException {
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Split a range of events at the segment boundaries and into chunks of at most eventsPerTask events.
+     */
+    private List<Chunk> split(long fromEventNumber, long toEventNumber) {
+        if (fromEventNumber < 0 || toEventNumber < fromEventNumber) {
+            throw new IllegalArgumentException(String.format("Invalid range of eventNumbers %d to %d.", fromEventNumber, toEventNumber));
+        }
+
+        long endEventNumber = Math.min(toEventNumber, this.eventStore.getHighWatermark());
+        List<Chunk> chunks = new ArrayList<>();
+        if (fromEventNumber >= endEventNumber) {
+            return chunks;
+        }
+
+        Iterator<SegmentName> segmentNames = this.eventStore.getAllSegmentNames().iterator();
+        SegmentName segmentName = segmentNames.hasNext() ? segmentNames.next() : null;
+        if (segmentName == null || fromEventNumber < segmentName.getNumberOfEventsBefore()) {
+            throw new PurgedEventException(String.format("EventNumber %d is purged.", fromEventNumber));
+        }
+
+        while (segmentName != null) {
+            SegmentName nextSegmentName = segmentNames.hasNext() ? segmentNames.next() : null;
+            long segmentEnd = nextSegmentName == null ? Long.MAX_VALUE : nextSegmentName.getNumberOfEventsBefore();
+            long start = Math.max(fromEventNumber, segmentName.getNumberOfEventsBefore());
+            long end = Math.min(endEventNumber, segmentEnd);
+            for (long chunkStart = start; chunkStart < end; chunkStart += this.eventsPerTask) {
+                chunks.add(new Chunk(segmentName, chunkStart, Math.min(end, chunkStart + this.eventsPerTask)));
+            }
+            segmentName = nextSegmentName;
+        }
+
+        return chunks;
+    }
+
+    private void read(Chunk chunk, Consumer<T> consumer) {
+        try {
+            Segment segment = this.eventStore.getSegment(chunk.startEventNumber);
+            if (segment == null || !segment.getSegmentName().equals(chunk.segmentName)) {
+                throw new PurgedEventException(String.format("EventNumber %d is purged.", chunk.startEventNumber));
+            }
+
+            int positionWithinSegment = (int) (chunk.startEventNumber - chunk.segmentName.getNumberOfEventsBefore());
+            try (SegmentReader reader = new SegmentReader(segment, positionWithinSegment)) {
+                for (long eventNumber = chunk.startEventNumber; eventNumber < chunk.endEventNumber; eventNumber++) {
+                    Event event = reader.next();
+                    if (event == null) {
+                        throw new IllegalStateException(String.format("EventNumber %d is below the high watermark but not written.", eventNumber));
+                    }
+                    consumer.accept(this.eventStore.getPayload(event));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Failed to replay eventNumbers {} to {}. Exception is {}.", chunk.startEventNumber, chunk.endEventNumber, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static class Chunk {
+        private final SegmentName segmentName;
+        private final long startEventNumber;
+        private final long endEventNumber;
+
+        // Filled by the decode task of a replay in order per key, the payloads of every lane in order.
+        private List<List<Object>> lanes;
+
+        private Chunk(SegmentName segmentName, long startEventNumber, long endEventNumber) {
+            this.segmentName = segmentName;
+            this.startEventNumber = startEventNumber;
+            this.endEventNumber = endEventNumber;
+        }
+    }
+
+    /**
+     * Reads the chunks from index from up to index to and passes their events to the consumer.
+     */
+    private class ReplayTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final Consumer<T> consumer;
+
+        private ReplayTask(List<Chunk> chunks, int from, int to, Consumer<T> consumer) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= 1) {
+                for (int i = this.from; i < this.to; i++) {
+                    SegmentReplayer.this.read(this.chunks.get(i), this.consumer);
+                }
+                return;
+            }
+
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new ReplayTask(this.chunks, this.from, mid, this.consumer), new ReplayTask(this.chunks, mid, this.to, this.consumer));
+        }
+    }
+
+    /**
+     * Decodes the chunks from index from up to index to, and puts each event in the lane its key hashes to.
+     */
+    private class DecodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final Function<? super T, ?> keyExtractor;
+
+        private DecodeTask(List<Chunk> chunks, int from, int to, Function<? super T, ?> keyExtractor) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.keyExtractor = keyExtractor;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= 1) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.decode(this.chunks.get(i));
+                }
+                return;
+            }
+
+            int mid = (this.from + this.to) >>> 1;
+            invokeAll(new DecodeTask(this.chunks, this.from, mid, this.keyExtractor), new DecodeTask(this.chunks, mid, this.to, this.keyExtractor));
+        }
+
+        private void decode(Chunk chunk) {
+            int parallelism = SegmentReplayer.this.parallelism;
+            List<List<Object>> lanes = new ArrayList<>(parallelism);
+            int expectedLaneSize = (int) ((chunk.endEventNumber - chunk.startEventNumber) / parallelism) + 1;
+            for (int lane = 0; lane < parallelism; lane++) {
+                lanes.add(new ArrayList<>(expectedLaneSize));
+            }
+
+            SegmentReplayer.this.read(chunk, payload -> {
+                Object key = this.keyExtractor.apply(payload);
+                lanes.get(key == null ? 0 : Math.floorMod(key.hashCode(), parallelism)).add(payload);
+            });
+            chunk.lanes = lanes;
+        }
+    }
+
+    /**
+     * Passes the decoded events of the lanes from index from up to index to to the consumer, chunk after chunk.
+     */
+    private class DispatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final Consumer<T> consumer;
+
+        private DispatchTask(List<Chunk> chunks, int from, int to, Consumer<T> consumer) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.consumer = consumer;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void compute() {
+            if (this.to - this.from > 1) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new DispatchTask(this.chunks, this.from, mid, this.consumer), new DispatchTask(this.chunks, mid, this.to, this.consumer));
+                return;
+            }
+
+            for (Chunk chunk : this.chunks) {
+                for (Object payload : chunk.lanes.get(this.from)) {
+                    this.consumer.accept((T) payload);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.kevi793.EventStorageAndProcessing.processor;
+
+import com.kevi793.EventStorageAndProcessing.exception.PurgedEventException;
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Emits the events of a store to a reactive subscriber from an eventNumber on, reading an event only once the
+ * subscriber requested it. Events are read on a worker of the scheduler as reads may go to disk. When the emitter
+ * has caught up with the store it holds no thread: the next write schedules it again.
+ * The subscriber is not a consumer group, so segments are purged without waiting for it; the flux fails with
+ * {@link PurgedEventException} when the next event is already purged.
+ */
+@Slf4j
+public class TailEmitter<T> {
+    private final EventStore<T> eventStore;
+    private final FluxSink<T> sink;
+    private final Scheduler.Worker worker;
+    private final AtomicInteger pendingDrains = new AtomicInteger();
+    private long eventNumber;
+
+    public TailEmitter(EventStore<T> eventStore, FluxSink<T> sink, Scheduler scheduler, long fromEventNumber) {
+        this.eventStore = eventStore;
+        this.sink = sink;
+        this.worker = scheduler.createWorker();
+        this.eventNumber = fromEventNumber;
+    }
+
+    public void start() {
+        this.sink.onDispose(this.worker);
+        this.sink.onRequest(requested -> this.drain());
+    }
+
+    /**
+     * Schedule the emission of the requested events, unless it is already scheduled or running, in which case
+     * it makes another pass.
+     */
+    private void drain() {
+        if (this.pendingDrains.getAndIncrement() != 0) {
+            return;
+        }
+
+        try {
+            this.worker.schedule(this::emit);
+        } catch (RejectedExecutionException e) {
+            log.debug("Tail from eventNumber {} is disposed.", this.eventNumber);
+        }
+    }
+
+    private void emit() {
+        int missed = 1;
+        do {
+            try {
+                this.emitRequested();
+            } catch (IOException | RuntimeException e) {
+                log.error("Error occurred while emitting eventNumber {}. Exception is {}.", this.eventNumber, e);
+                this.sink.error(e);
+                return;
+            }
+            missed = this.pendingDrains.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emitRequested() throws IOException {
+        while (this.sink.requestedFromDownstream() > 0 && !this.sink.isCancelled()) {
+            if (this.eventNumber >= this.eventStore.getHighWatermark()) {
+                log.debug("Caught up at eventNumber {}, waiting for the next write.", this.eventNumber);
+                this.eventStore.onEventWritten(this.eventNumber, this::drain);
+                return;
+            }
+
+            T payload = this.eventStore.read(this.eventNumber);
+            if (payload == null) {
+                throw new PurgedEventException(String.format("EventNumber %d is purged.", this.eventNumber));
+            }
+
+            this.sink.next(payload);
+            this.eventNumber++;
+        }
+    }
+}
@@ -1,25 +1,44 @@
 package com.kevi793.EventStorageAndProcessing.purge;
 
 import com.kevi793.EventStorageAndProcessing.store.EventStore;
-import com.kevi793.EventStorageAndProcessing.store.ProcessedEventsTracker;
 import com.kevi793.EventStorageAndProcessing.store.segment.Segment;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentManifest;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentName;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Comparator;
 
+/**
+ * Deletes the oldest sealed segments once they are not retained any more:
+ * <ul>
+ * <li>every consumer group of the store has moved past the segment and the retainedProcessedSegments that follow it,</li>
+ * <li>or the logs of the store are larger than retentionSizeInBytes,</li>
+ * <li>or the last event of the segment is older than retentionTimeInMs.</li>
+ * </ul>
+ * A consumer group that has not processed a segment deleted for its size or age is moved past it.
+ * A pass walks the manifest from the oldest segment and stops at the first one that is retained, so it costs as much
+ * as it deletes.
+ */
 @Slf4j
 public class SegmentCleaner extends Thread {
 
-    private final ProcessedEventsTracker processedEventsTracker;
-    private final EventStore eventStore;
+    private final EventStore<?> eventStore;
     private final long cleanupInterval;
+    private final int retainedProcessedSegments;
+    private final long retentionSizeInBytes;
+    private final long retentionTimeInMs;
 
-    public SegmentCleaner(ProcessedEventsTracker processedEventsTracker, EventStore eventStore, long cleanupInterval) {
-        this.processedEventsTracker = processedEventsTracker;
+    // Create time of the last event of the oldest segment, kept so that a pass deleting nothing reads no event.
+    private SegmentName oldestSegmentName;
+    private long oldestSegmentLatestEventCreateTime;
+
+    public SegmentCleaner(EventStore<?> eventStore, long cleanupInterval, int retainedProcessedSegments,
+                          long retentionSizeInBytes, long retentionTimeInMs) {
         this.eventStore = eventStore;
         this.cleanupInterval = cleanupInterval;
+        this.retainedProcessedSegments = retainedProcessedSegments;
+        this.retentionSizeInBytes = retentionSizeInBytes;
+        this.retentionTimeInMs = retentionTimeInMs;
     }
 
     @Override
@@ -33,16 +52,7 @@ public class SegmentCleaner extends Thread {
 
             log.debug("Trying to find any segment to be deleted.");
             try {
-                Segment[] segments = this.eventStore.getAllSegments();
-                Arrays.sort(segments, Comparator.comparingLong(s -> s.getSegmentName().getNumberOfEventsBefore()));
-                long eventsProcessedSoFar = this.processedEventsTracker.getNumberOfEventsProcessedSoFar();
-
-                for (int i = 1; i < segments.length; i++) {
-                    if (segments[i].getSegmentName().getNumberOfEventsBefore() < eventsProcessedSoFar) {
-                        segments[i - 1].delete();
-                    }
-                }
-
+                this.deleteSegmentsNotRetained();
             } catch (IOException e) {
                 log.error("Failed to get segments. Will retry after some time");
                 e.printStackTrace();
@@ -57,4 +67,74 @@ public class SegmentCleaner extends Thread {
             }
         }
     }
+
+    private void deleteSegmentsNotRetained() throws IOException {
+        long eventsProcessedSoFar = this.getMinNumberOfEventsProcessedSoFar();
+
+        SegmentManifest.Entry oldestSegment;
+        while ((oldestSegment = this.eventStore.getOldestSealedSegment()) != null) {
+            boolean processed = this.isProcessed(oldestSegment, eventsProcessedSoFar);
+            if (!processed && !this.isOverRetentionSize() && !this.isOverRetentionTime(oldestSegment)) {
+                break;
+            }
+
+            // The active segment is in the manifest while it is rolled, and is not deleted.
+            if (!this.eventStore.deleteSegment(oldestSegment.getSegmentName())) {
+                break;
+            }
+            if (!processed) {
+                this.moveConsumerGroupsPast(oldestSegment);
+            }
+        }
+    }
+
+    /**
+     * Whether every consumer group has moved past the segment and the retainedProcessedSegments sealed segments after it.
+     */
+    private boolean isProcessed(SegmentManifest.Entry segment, long eventsProcessedSoFar) {
+        SegmentManifest.Entry lastSegmentToProcess = this.eventStore.getSealedSegmentAfter(segment.getSegmentName(), this.retainedProcessedSegments);
+        return lastSegmentToProcess != null && lastSegmentToProcess.getNumberOfEventsBeforeNextSegment() < eventsProcessedSoFar;
+    }
+
+    private boolean isOverRetentionSize() throws IOException {
+        return this.retentionSizeInBytes != Long.MAX_VALUE && this.eventStore.getSizeInBytes() > this.retentionSizeInBytes;
+    }
+
+    private boolean isOverRetentionTime(SegmentManifest.Entry segment) throws IOException {
+        if (this.retentionTimeInMs == Long.MAX_VALUE) {
+            return false;
+        }
+
+        if (!segment.getSegmentName().equals(this.oldestSegmentName)) {
+            Segment oldestSegment = segment.getNumberOfEvents() == 0 ? null
+                    : this.eventStore.getSegment(segment.getNumberOfEventsBeforeNextSegment() - 1);
+            this.oldestSegmentLatestEventCreateTime = oldestSegment == null ? -1 : oldestSegment.getLatestEventCreateTime();
+            this.oldestSegmentName = segment.getSegmentName();
+        }
+
+        return System.currentTimeMillis() - this.oldestSegmentLatestEventCreateTime > this.retentionTimeInMs;
+    }
+
+    private void moveConsumerGroupsPast(SegmentManifest.Entry segment) {
+        for (String consumerGroupName : this.eventStore.getConsumerGroupNames()) {
+            long numberOfEventsProcessedSoFar = this.eventStore.getNumberOfEventsProcessedSoFar(consumerGroupName);
+            if (numberOfEventsProcessedSoFar < segment.getNumberOfEventsBeforeNextSegment()) {
+                log.warn("Consumer group {} skips {} events as {} is deleted by the retention.", consumerGroupName,
+                        segment.getNumberOfEventsBeforeNextSegment() - numberOfEventsProcessedSoFar, segment.getSegmentName());
+                this.eventStore.resetConsumerGroup(consumerGroupName, segment.getNumberOfEventsBeforeNextSegment());
+            }
+        }
+    }
+
+    /**
+     * The events processed by the slowest consumer group. No segment is processed when the store has no group.
+     */
+    private long getMinNumberOfEventsProcessedSoFar() {
+        long minNumberOfEventsProcessedSoFar = this.eventStore.getConsumerGroupNames().isEmpty() ? 0 : Long.MAX_VALUE;
+        for (String consumerGroupName : this.eventStore.getConsumerGroupNames()) {
+            minNumberOfEventsProcessedSoFar = Math.min(minNumberOfEventsProcessedSoFar, this.eventStore.getNumberOfEventsProcessedSoFar(consumerGroupName));
+        }
+
+        return minNumberOfEventsProcessedSoFar;
+    }
 }
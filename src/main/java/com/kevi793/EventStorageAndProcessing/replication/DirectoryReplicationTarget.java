@@ -0,0 +1,59 @@
+package com.kevi793.EventStorageAndProcessing.replication;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Follower in a local directory, typically on a second disk.
+ */
+@Slf4j
+public class DirectoryReplicationTarget implements ReplicationTarget {
+
+    private final Path directoryPath;
+
+    public DirectoryReplicationTarget(Path directoryPath) throws IOException {
+        this.directoryPath = directoryPath;
+        Files.createDirectories(directoryPath);
+        log.debug("Replicating to {}.", directoryPath);
+    }
+
+    @Override
+    public long size(String fileName) throws IOException {
+        Path filePath = this.directoryPath.resolve(fileName);
+        return Files.exists(filePath) ? Files.size(filePath) : 0;
+    }
+
+    @Override
+    public WritableByteChannel open(String fileName, long position) throws IOException {
+        FileChannel channel = FileChannel.open(this.directoryPath.resolve(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > position) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+        return channel;
+    }
+
+    @Override
+    public void acknowledge(WritableByteChannel channel, boolean durable) throws IOException {
+        if (durable) {
+            ((FileChannel) channel).force(false);
+        }
+    }
+
+    @Override
+    public void delete(String fileName) throws IOException {
+        if (Files.deleteIfExists(this.directoryPath.resolve(fileName))) {
+            log.debug("Deleted {} from {}.", fileName, this.directoryPath);
+        }
+    }
+
+    public Path getDirectoryPath() {
+        return this.directoryPath;
+    }
+}
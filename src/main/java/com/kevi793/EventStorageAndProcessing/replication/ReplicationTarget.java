@@ -0,0 +1,28 @@
+package com.kevi793.EventStorageAndProcessing.replication;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Follower the files of a store are copied to. Files are identified by their name in the log directory of the store.
+ */
+public interface ReplicationTarget {
+
+    /**
+     * Number of bytes of the file the follower has, 0 if it does not have the file.
+     */
+    long size(String fileName) throws IOException;
+
+    /**
+     * Open a channel writing to the file from the given position, creating the file if it does not exist.
+     */
+    WritableByteChannel open(String fileName, long position) throws IOException;
+
+    /**
+     * Acknowledge what was written to the channel, making it durable on the follower if durable is true.
+     * Called before the channel is closed.
+     */
+    void acknowledge(WritableByteChannel channel, boolean durable) throws IOException;
+
+    void delete(String fileName) throws IOException;
+}
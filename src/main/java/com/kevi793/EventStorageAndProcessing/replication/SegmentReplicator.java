@@ -0,0 +1,349 @@
+package com.kevi793.EventStorageAndProcessing.replication;
+
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.HighWatermark;
+import com.kevi793.EventStorageAndProcessing.store.segment.EventIndexSegment;
+import com.kevi793.EventStorageAndProcessing.store.segment.EventLogSegment;
+import com.kevi793.EventStorageAndProcessing.store.segment.Segment;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentName;
+import com.kevi793.EventStorageAndProcessing.store.segment.TimeIndexSegment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies the files of a store to a follower as they are written.
+ * The new bytes of the log and index of every segment are shipped with {@link FileChannel#transferTo}, so they are
+ * never copied into the heap. The log is shipped before the index, so the follower index never points past its log,
+ * and the time index last.
+ * Segments compressed before they were fully shipped are shipped compressed, segments deleted from the store are
+ * deleted from the follower, and the trackers are copied every replicationIntervalInMs.
+ * The replicator wakes up on every write, and publishes the number of events the follower has as a high watermark,
+ * counting only up to the first segment the follower does not have all of.
+ * Writes waiting for the follower longer than replicationTimeoutInMs fail, as do the ones still waiting when the
+ * replicator is stopped.
+ */
+@Slf4j
+public class SegmentReplicator extends Thread {
+
+    private final EventStore<?> eventStore;
+    private final ReplicationTarget replicationTarget;
+    private final long replicationIntervalInMs;
+    private final long replicationTimeoutInNs;
+    private final boolean durable;
+    private final HighWatermark replicatedHighWatermark;
+    private final Map<SegmentName, ReplicaState> replicaStates = new ConcurrentHashMap<>();
+    private final PriorityQueue<PendingAcknowledgement> pendingAcknowledgements = new PriorityQueue<>();
+    private long lastTrackerReplicationTime;
+    private volatile boolean stopped;
+
+    /**
+     * @param replicationTimeoutInMs Longest time a write waits for the follower.
+     * @param durable                Force the follower files before acknowledging writes.
+     */
+    public SegmentReplicator(EventStore<?> eventStore, ReplicationTarget replicationTarget, long replicationIntervalInMs,
+                             long replicationTimeoutInMs, boolean durable) {
+        this.eventStore = eventStore;
+        this.replicationTarget = replicationTarget;
+        this.replicationIntervalInMs = replicationIntervalInMs;
+        this.replicationTimeoutInNs = TimeUnit.MILLISECONDS.toNanos(replicationTimeoutInMs);
+        this.durable = durable;
+        this.replicatedHighWatermark = new HighWatermark(0, 0);
+    }
+
+    /**
+     * Number of events the follower has.
+     */
+    public long getReplicatedHighWatermark() {
+        return this.replicatedHighWatermark.get();
+    }
+
+    /**
+     * @param offset Offset of a written event.
+     * @return Future completed with the offset once the follower has the event, failed with an IOException if it does
+     * not get it within the replication timeout.
+     */
+    public CompletableFuture<Long> awaitReplication(long offset) {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        synchronized (this.pendingAcknowledgements) {
+            this.pendingAcknowledgements.add(new PendingAcknowledgement(offset, System.nanoTime() + this.replicationTimeoutInNs, future));
+        }
+
+        // The follower may have caught up before the acknowledgement was queued.
+        this.completeAcknowledgements(this.replicatedHighWatermark.get());
+        if (this.stopped) {
+            this.failAcknowledgements(new IOException("The segment replicator is stopped."));
+        }
+        return future;
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Segment replicator thread is interrupted. Shutting down!");
+                break;
+            }
+
+            this.failExpiredAcknowledgements();
+            try {
+                this.replicate();
+                this.eventStore.awaitEvent(this.replicatedHighWatermark.get(), this.replicationIntervalInMs, TimeUnit.MILLISECONDS);
+            } catch (ClosedByInterruptException e) {
+                log.info("Segment replicator thread is interrupted while replicating.");
+            } catch (IOException e) {
+                log.error("Failed to replicate. Will retry after some time. Exception is {}.", e);
+                this.sleep();
+            } catch (InterruptedException e) {
+                log.info("Segment replicator thread is interrupted.");
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        this.stopped = true;
+        this.failAcknowledgements(new IOException("The segment replicator is stopped."));
+    }
+
+    private void replicate() throws IOException {
+        SegmentName[] segmentNames = this.eventStore.getAllSegmentNames().toArray(new SegmentName[0]);
+        long replicatedHighWatermark = this.replicatedHighWatermark.get();
+        // The follower has the events up to the first segment it does not have all of, later segments may be ahead.
+        boolean contiguous = true;
+
+        for (int i = 0; i < segmentNames.length; i++) {
+            SegmentName segmentName = segmentNames[i];
+            ReplicaState replicaState = this.replicaStates.get(segmentName);
+
+            if (replicaState == null || !replicaState.complete) {
+                // While the store rolls, the segment being created is not the active segment yet.
+                Segment segment = this.eventStore.getSegment(segmentName.getNumberOfEventsBefore());
+                if (segment == null || !segment.getSegmentName().equals(segmentName)) {
+                    break;
+                }
+
+                if (replicaState == null) {
+                    replicaState = this.loadReplicaState(segment);
+                    this.replicaStates.put(segmentName, replicaState);
+                }
+                this.replicate(segment, replicaState, i < segmentNames.length - 1);
+            }
+
+            if (contiguous) {
+                replicatedHighWatermark = Math.max(replicatedHighWatermark,
+                        segmentName.getNumberOfEventsBefore() + replicaState.indexPosition / EventIndexSegment.ENTRY_SIZE_IN_BYTES);
+                contiguous = replicaState.complete;
+            }
+        }
+
+        this.deleteSegmentsDeletedFromStore(segmentNames);
+        this.replicateTrackersIfDue();
+
+        this.replicatedHighWatermark.advanceTo(replicatedHighWatermark);
+        this.completeAcknowledgements(replicatedHighWatermark);
+    }
+
+    private void replicate(Segment segment, ReplicaState replicaState, boolean sealed) throws IOException {
+        EventLogSegment eventLogSegment = segment.getEventLogSegment();
+        // The number of entries is taken first, so the log holds at least the records they point to.
+        long indexEnd = (long) segment.getNumberOfEvents() * EventIndexSegment.ENTRY_SIZE_IN_BYTES;
+        long logEnd = eventLogSegment.getFileSize();
+
+        if (replicaState.logPosition < logEnd) {
+            if (eventLogSegment.isCompressed()) {
+                Path compressedLogFilePath = eventLogSegment.getCompressedLogFilePath();
+                this.transfer(compressedLogFilePath, 0, compressedLogFilePath.toFile().length());
+                this.replicationTarget.delete(eventLogSegment.getFilePath().getFileName().toString());
+                log.debug("Replicated {} compressed.", segment.getSegmentName());
+            } else {
+                eventLogSegment.flushIfNeeded(logEnd);
+                try {
+                    this.transfer(eventLogSegment.getFilePath(), replicaState.logPosition, logEnd);
+                } catch (NoSuchFileException e) {
+                    log.debug("{} was compressed while it was replicated, it is replicated compressed next time.", segment.getSegmentName());
+                    return;
+                }
+            }
+            replicaState.logPosition = logEnd;
+        }
+
+        if (replicaState.indexPosition < indexEnd) {
+            this.transfer(segment.getEventIndexSegment().getFilePath(), replicaState.indexPosition, indexEnd);
+            replicaState.indexPosition = indexEnd;
+        }
+
+        TimeIndexSegment timeIndexSegment = segment.getTimeIndexSegment();
+        long timeIndexEnd = timeIndexSegment.getFileSize();
+        if (replicaState.timeIndexPosition < timeIndexEnd) {
+            timeIndexSegment.flushIfNeeded(timeIndexEnd);
+            this.transfer(timeIndexSegment.getFilePath(), replicaState.timeIndexPosition, timeIndexEnd);
+            replicaState.timeIndexPosition = timeIndexEnd;
+        }
+
+        if (sealed && replicaState.logPosition == eventLogSegment.getFileSize()
+                && replicaState.indexPosition == (long) segment.getNumberOfEvents() * EventIndexSegment.ENTRY_SIZE_IN_BYTES
+                && replicaState.timeIndexPosition == timeIndexSegment.getFileSize()) {
+            replicaState.complete = true;
+            log.debug("Replicated sealed segment {}.", segment.getSegmentName());
+        }
+    }
+
+    /**
+     * Ship the bytes of the file from one position to another to the file with the same name on the follower.
+     */
+    private void transfer(Path sourceFilePath, long from, long to) throws IOException {
+        String fileName = sourceFilePath.getFileName().toString();
+        try (FileChannel source = FileChannel.open(sourceFilePath, StandardOpenOption.READ);
+             WritableByteChannel target = this.replicationTarget.open(fileName, from)) {
+            long position = from;
+            while (position < to) {
+                long transferred = source.transferTo(position, to - position, target);
+                if (transferred <= 0) {
+                    throw new EOFException(String.format("Reached the end of %s while replicating it up to %d.", sourceFilePath, to));
+                }
+                position += transferred;
+            }
+            this.replicationTarget.acknowledge(target, this.durable);
+        }
+
+        log.debug("Replicated {} from {} to {}.", fileName, from, to);
+    }
+
+    /**
+     * Resume from what the follower already has.
+     */
+    private ReplicaState loadReplicaState(Segment segment) throws IOException {
+        ReplicaState replicaState = new ReplicaState();
+        EventLogSegment eventLogSegment = segment.getEventLogSegment();
+        if (eventLogSegment.getCompressedLogFilePath() != null
+                && this.replicationTarget.size(eventLogSegment.getCompressedLogFilePath().getFileName().toString()) > 0) {
+            replicaState.logPosition = eventLogSegment.getFileSize();
+        } else {
+            replicaState.logPosition = Math.min(eventLogSegment.getFileSize(),
+                    this.replicationTarget.size(eventLogSegment.getFilePath().getFileName().toString()));
+        }
+
+        long indexSize = this.replicationTarget.size(segment.getEventIndexSegment().getFilePath().getFileName().toString());
+        replicaState.indexPosition = Math.min((long) segment.getNumberOfEvents() * EventIndexSegment.ENTRY_SIZE_IN_BYTES,
+                indexSize - indexSize % EventIndexSegment.ENTRY_SIZE_IN_BYTES);
+
+        long timeIndexSize = this.replicationTarget.size(segment.getTimeIndexSegment().getFilePath().getFileName().toString());
+        replicaState.timeIndexPosition = Math.min(segment.getTimeIndexSegment().getFileSize(),
+                timeIndexSize - timeIndexSize % TimeIndexSegment.ENTRY_SIZE_IN_BYTES);
+        return replicaState;
+    }
+
+    private void deleteSegmentsDeletedFromStore(SegmentName[] segmentNames) throws IOException {
+        Set<SegmentName> liveSegmentNames = new HashSet<>();
+        for (SegmentName segmentName : segmentNames) {
+            liveSegmentNames.add(segmentName);
+        }
+
+        Iterator<SegmentName> iterator = this.replicaStates.keySet().iterator();
+        while (iterator.hasNext()) {
+            SegmentName segmentName = iterator.next();
+            if (!liveSegmentNames.contains(segmentName)) {
+                for (String fileName : Segment.getFileNames(segmentName)) {
+                    this.replicationTarget.delete(fileName);
+                }
+                iterator.remove();
+                log.debug("Deleted segment {} from the follower.", segmentName);
+            }
+        }
+    }
+
+    private void replicateTrackersIfDue() throws IOException {
+        if (System.currentTimeMillis() - this.lastTrackerReplicationTime < this.replicationIntervalInMs) {
+            return;
+        }
+
+        for (Path trackerFilePath : this.eventStore.getProcessedEventsTrackerFilePaths()) {
+            this.transfer(trackerFilePath, 0, trackerFilePath.toFile().length());
+        }
+        this.lastTrackerReplicationTime = System.currentTimeMillis();
+    }
+
+    private void completeAcknowledgements(long replicatedHighWatermark) {
+        synchronized (this.pendingAcknowledgements) {
+            while (!this.pendingAcknowledgements.isEmpty() && this.pendingAcknowledgements.peek().offset < replicatedHighWatermark) {
+                PendingAcknowledgement pendingAcknowledgement = this.pendingAcknowledgements.poll();
+                pendingAcknowledgement.future.complete(pendingAcknowledgement.offset);
+            }
+        }
+    }
+
+    /**
+     * Fail the writes that have waited for the follower longer than the replication timeout, while it is down or
+     * falling behind.
+     */
+    private void failExpiredAcknowledgements() {
+        long now = System.nanoTime();
+        synchronized (this.pendingAcknowledgements) {
+            Iterator<PendingAcknowledgement> iterator = this.pendingAcknowledgements.iterator();
+            while (iterator.hasNext()) {
+                PendingAcknowledgement pendingAcknowledgement = iterator.next();
+                if (now - pendingAcknowledgement.deadline >= 0) {
+                    iterator.remove();
+                    pendingAcknowledgement.future.completeExceptionally(new IOException(String.format(
+                            "The follower did not get offset %d within the replication timeout.", pendingAcknowledgement.offset)));
+                }
+            }
+        }
+    }
+
+    private void failAcknowledgements(IOException e) {
+        synchronized (this.pendingAcknowledgements) {
+            while (!this.pendingAcknowledgements.isEmpty()) {
+                this.pendingAcknowledgements.poll().future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(this.replicationIntervalInMs);
+        } catch (InterruptedException interruptedException) {
+            log.info("Segment replicator thread is interrupted.");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class ReplicaState {
+        private long logPosition;
+        private long indexPosition;
+        private long timeIndexPosition;
+        private boolean complete;
+    }
+
+    private static class PendingAcknowledgement implements Comparable<PendingAcknowledgement> {
+        private final long offset;
+        private final long deadline;
+        private final CompletableFuture<Long> future;
+
+        private PendingAcknowledgement(long offset, long deadline, CompletableFuture<Long> future) {
+            this.offset = offset;
+            this.deadline = deadline;
+            this.future = future;
+        }
+
+        @Override
+        public int compareTo(PendingAcknowledgement other) {
+            return Long.compare(this.offset, other.offset);
+        }
+    }
+}
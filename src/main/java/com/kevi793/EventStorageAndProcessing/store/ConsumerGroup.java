@@ -0,0 +1,39 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import lombok.Getter;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A named reader of a store. Every group has its own processor thread and tracker, and reads all the events
+ * of the store independently of the other groups.
+ */
+@Getter
+public class ConsumerGroup<T> {
+    private final String name;
+    private final Consumer<T> consumer;
+    private final Consumer<List<T>> batchConsumer;
+    private final int maxBatchSize;
+    private final long maxBatchWaitTimeInMs;
+
+    ConsumerGroup(String name, Consumer<T> consumer) {
+        this(name, consumer, null, 0, 0);
+    }
+
+    ConsumerGroup(String name, Consumer<List<T>> batchConsumer, int maxBatchSize, long maxBatchWaitTimeInMs) {
+        this(name, null, batchConsumer, maxBatchSize, maxBatchWaitTimeInMs);
+    }
+
+    private ConsumerGroup(String name, Consumer<T> consumer, Consumer<List<T>> batchConsumer, int maxBatchSize, long maxBatchWaitTimeInMs) {
+        this.name = name;
+        this.consumer = consumer;
+        this.batchConsumer = batchConsumer;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchWaitTimeInMs = maxBatchWaitTimeInMs;
+    }
+
+    public boolean isBatchConsumer() {
+        return this.batchConsumer != null;
+    }
+}
@@ -0,0 +1,23 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+/**
+ * When the events written to a store are forced to disk.
+ */
+public enum DurabilityMode {
+
+    /**
+     * Leave it to the operating system to write the events to disk.
+     */
+    NONE,
+
+    /**
+     * Force the active segment to disk after every write.
+     */
+    FSYNC_PER_WRITE,
+
+    /**
+     * Force the active segment to disk once for a batch of writes.
+     * A write completes when the batch containing it has been forced.
+     */
+    GROUP_COMMIT
+}
@@ -1,16 +1,22 @@
 package com.kevi793.EventStorageAndProcessing.store;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kevi793.EventStorageAndProcessing.exception.CorruptRecordException;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.SneakyThrows;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.zip.CRC32;
 
 @Getter
 public class Event {
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * Size of the fixed part of a binary record: length, checksum, offset and create time.
+     */
+    public static final int BINARY_RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES;
 
     private static final String EVENT_OFFSET = "offset";
     private static final String PAYLOAD = "payload";
@@ -18,21 +24,28 @@ public class Event {
     private static final String PAYLOAD_SIZE = "payloadSize";
     private static final String KEY_VALUE_SEPARATOR = ":";
     private static final String PROPERTY_SEPARATOR = " ";
+    private static final int CHECKSUMMED_PART_POSITION = Integer.BYTES + Integer.BYTES;
 
     private final int eventOffset;
-    private final String payloadString;
     private final Timestamp createTime;
+    @Getter(AccessLevel.NONE)
+    private final ByteBuffer payload;
 
-    public Event(int offset, Object payload) throws JsonProcessingException {
-        this.eventOffset = offset;
-        this.createTime = new Timestamp(new Date().getTime());
-        this.payloadString = objectMapper.writeValueAsString(payload);
+    public Event(int offset, Timestamp createTime, String payloadString) {
+        this(offset, createTime, ByteBuffer.wrap(payloadString.getBytes(StandardCharsets.UTF_8)));
     }
 
-    public Event(int offset, Timestamp createTime, String payloadString) {
+    private Event(int offset, Timestamp createTime, ByteBuffer payload) {
         this.eventOffset = offset;
         this.createTime = createTime;
-        this.payloadString = payloadString;
+        this.payload = payload;
+    }
+
+    /**
+     * Create an event for a payload that is already serialized.
+     */
+    public static Event fromSerializedPayload(int offset, byte[] serializedPayload) {
+        return new Event(offset, new Timestamp(new Date().getTime()), ByteBuffer.wrap(serializedPayload));
     }
 
     public static Event from(String serializedEvent) {
@@ -51,8 +64,76 @@ public class Event {
         return new Event(offset, createTime, payload);
     }
 
-    public <T> T getPayload(Class<T> clazz) throws JsonProcessingException {
-        return objectMapper.readValue(this.payloadString, clazz);
+    /**
+     * Decode a binary record written by {@link #toBinaryRecord()}.
+     * The payload of the returned event is a slice of the given buffer, nothing is copied.
+     *
+     * @param record Buffer positioned at the start of the record.
+     * @return The decoded event.
+     * @throws CorruptRecordException If the record is truncated or its checksum does not match.
+     */
+    public static Event from(ByteBuffer record) throws CorruptRecordException {
+        int recordStart = record.position();
+        if (record.remaining() < BINARY_RECORD_HEADER_SIZE) {
+            throw new CorruptRecordException(String.format("Record of %d bytes is shorter than the record header.", record.remaining()));
+        }
+
+        int length = record.getInt(recordStart);
+        if (length < BINARY_RECORD_HEADER_SIZE - Integer.BYTES || length > record.remaining() - Integer.BYTES) {
+            throw new CorruptRecordException(String.format("Record length %d does not fit in the %d bytes read.", length, record.remaining()));
+        }
+
+        int checksum = record.getInt(recordStart + Integer.BYTES);
+        ByteBuffer checksummedPart = record.duplicate();
+        checksummedPart.position(recordStart + CHECKSUMMED_PART_POSITION).limit(recordStart + Integer.BYTES + length);
+        CRC32 crc = new CRC32();
+        crc.update(checksummedPart);
+        if ((int) crc.getValue() != checksum) {
+            throw new CorruptRecordException(String.format("Checksum mismatch for record at position %d.", recordStart));
+        }
+
+        long offset = record.getLong(recordStart + CHECKSUMMED_PART_POSITION);
+        long createTime = record.getLong(recordStart + CHECKSUMMED_PART_POSITION + Long.BYTES);
+        ByteBuffer payload = record.duplicate();
+        payload.position(recordStart + BINARY_RECORD_HEADER_SIZE).limit(recordStart + Integer.BYTES + length);
+
+        return new Event((int) offset, new Timestamp(createTime), payload.slice());
+    }
+
+    /**
+     * The stored bytes of the payload, a view that shares them with the event.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return this.payload.duplicate();
+    }
+
+    public String getPayloadString() {
+        return new String(this.getPayloadBytes(), StandardCharsets.UTF_8);
+    }
+
+    public byte[] getPayloadBytes() {
+        byte[] bytes = new byte[this.payload.remaining()];
+        this.payload.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Binary record layout: length of the rest of the record, CRC32 of everything after the checksum,
+     * offset, create time and the payload bytes.
+     */
+    public byte[] toBinaryRecord() {
+        int payloadSize = this.payload.remaining();
+        ByteBuffer record = ByteBuffer.allocate(BINARY_RECORD_HEADER_SIZE + payloadSize);
+        record.putInt(BINARY_RECORD_HEADER_SIZE - Integer.BYTES + payloadSize);
+        record.putInt(0);
+        record.putLong(this.eventOffset);
+        record.putLong(this.createTime.getTime());
+        record.put(this.payload.duplicate());
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), CHECKSUMMED_PART_POSITION, record.capacity() - CHECKSUMMED_PART_POSITION);
+        record.putInt(Integer.BYTES, (int) crc.getValue());
+        return record.array();
     }
 
     @SneakyThrows
@@ -62,6 +143,6 @@ public class Event {
                 PROPERTY_SEPARATOR +
                 String.format("%s%s%d", CREATE_TIME, KEY_VALUE_SEPARATOR, this.createTime.getTime()) +
                 PROPERTY_SEPARATOR +
-                String.format("%s%s%s", PAYLOAD, KEY_VALUE_SEPARATOR, this.payloadString);
+                String.format("%s%s%s", PAYLOAD, KEY_VALUE_SEPARATOR, this.getPayloadString());
     }
 }
@@ -1,129 +1,917 @@
 package com.kevi793.EventStorageAndProcessing.store;
 
 import com.kevi793.EventStorageAndProcessing.Constant;
-import com.kevi793.EventStorageAndProcessing.cache.Cache;
-import com.kevi793.EventStorageAndProcessing.cache.FIFOCache;
+import com.kevi793.EventStorageAndProcessing.cache.CacheStats;
+import com.kevi793.EventStorageAndProcessing.cache.SLRUCache;
+import com.kevi793.EventStorageAndProcessing.compaction.SegmentCompactor;
+import com.kevi793.EventStorageAndProcessing.exception.CorruptRecordException;
+import com.kevi793.EventStorageAndProcessing.exception.PartialAppendException;
+import com.kevi793.EventStorageAndProcessing.metrics.EventStoreMetrics;
+import com.kevi793.EventStorageAndProcessing.processor.BatchEventProcessor;
 import com.kevi793.EventStorageAndProcessing.processor.EventProcessor;
+import com.kevi793.EventStorageAndProcessing.processor.SegmentReplayer;
+import com.kevi793.EventStorageAndProcessing.processor.TailEmitter;
 import com.kevi793.EventStorageAndProcessing.purge.SegmentCleaner;
+import com.kevi793.EventStorageAndProcessing.replication.DirectoryReplicationTarget;
+import com.kevi793.EventStorageAndProcessing.replication.ReplicationTarget;
+import com.kevi793.EventStorageAndProcessing.replication.SegmentReplicator;
+import com.kevi793.EventStorageAndProcessing.store.codec.Codec;
+import com.kevi793.EventStorageAndProcessing.store.codec.JacksonCodec;
+import com.kevi793.EventStorageAndProcessing.store.segment.CompressedBlockKey;
+import com.kevi793.EventStorageAndProcessing.store.segment.CompressedLogFile;
+import com.kevi793.EventStorageAndProcessing.store.segment.RecordFormat;
 import com.kevi793.EventStorageAndProcessing.store.segment.Segment;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentConfig;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentManifest;
 import com.kevi793.EventStorageAndProcessing.store.segment.SegmentName;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.CompressionCodec;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.CompressionCodecs;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.Objects;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
-public class EventStore<T> {
-    public static final long DEFAULT_MAX_SEGMENT_LOG_FILE_SIZE_IN_BYTES = 1024L;
+public class EventStore<T> implements Cloneable, Closeable {
+    public static final long DEFAULT_MAX_SEGMENT_LOG_FILE_SIZE_IN_BYTES = 64L * 1024 * 1024;
     private static final String SEGMENT = "segment";
     private static final String PROCESSED_EVENTS_TRACKER_FILE_NAME = "processed.log";
-    private static final long DEFAULT_SEGMENT_CLEANUP_TIME_INTERVAL = 10;
+    private static final String PROCESSED_EVENTS_TRACKER_FILE_PREFIX = "processed-";
+    private static final String PROCESSED_EVENTS_TRACKER_FILE_EXTENSION = ".log";
+    public static final String DEFAULT_CONSUMER_GROUP = "default";
+    // Group names go into the names of tracker files, so they cannot hold a path separator.
+    private static final Pattern CONSUMER_GROUP_NAME_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final long DEFAULT_SEGMENT_CLEANUP_TIME_INTERVAL = 1000;
     private static final long DEFAULT_EVENT_PROCESSOR_WAIT_TIME = 10;
+    private static final int DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE = 128;
+    private static final long DEFAULT_GROUP_COMMIT_MAX_LINGER_TIME = 5;
+    private static final int DEFAULT_TAIL_BUFFER_SIZE = 1024;
+    private static final long DEFAULT_COMPACTION_TIME_INTERVAL = 1000;
+    private static final long DEFAULT_COMPRESSED_BLOCK_CACHE_SIZE_IN_BYTES = 16 * 1024 * 1024;
+    private static final long DEFAULT_REPLICATION_TIME_INTERVAL = 100;
+    private static final long DEFAULT_REPLICATION_TIMEOUT = 30 * 1000;
+    private static final int DEFAULT_RING_BUFFER_SIZE = 1024;
+    private static final long DEFAULT_INGESTION_WRITER_WAIT_TIME = 10;
+    private static final long DEFAULT_SEGMENT_AGE_CHECK_TIME_INTERVAL = 1000;
 
     private String name;
     private String dataDirPath;
-    private Long maxEventLogSegmentFileSizeInBytes;
-    private Cache<SegmentName, Segment> segmentCache;
+    private long maxEventLogSegmentFileSizeInBytes = DEFAULT_MAX_SEGMENT_LOG_FILE_SIZE_IN_BYTES;
+    private int maxSegmentNumberOfEvents = Integer.MAX_VALUE;
+    private long maxSegmentAgeInMs = Long.MAX_VALUE;
+    private boolean rollSegmentsInBackground = true;
+    private SLRUCache<SegmentName, Segment> segmentCache;
+    private long weighedActiveSegmentMappedBytes;
     private Class<T> clazz;
+    private Codec<T> codec;
     private Consumer<T> consumer;
+    private Consumer<List<T>> batchConsumer;
+    private int maxBatchSize;
+    private long maxBatchWaitTimeInMs;
+    private Map<String, ConsumerGroup<T>> consumerGroups = new LinkedHashMap<>();
     private int segmentCacheSize;
+    private long segmentCacheMaxMappedBytes = Long.MAX_VALUE;
+    private SegmentConfig.SegmentConfigBuilder segmentConfigBuilder = new SegmentConfig.SegmentConfigBuilder();
+    private SegmentConfig segmentConfig;
+    private SLRUCache<CompressedBlockKey, byte[]> compressedBlockCache;
     private long segmentCleanupTimeIntervalInMs = DEFAULT_SEGMENT_CLEANUP_TIME_INTERVAL;
+    private int retainedProcessedSegments;
+    private long retentionSizeInBytes = Long.MAX_VALUE;
+    private long retentionTimeInMs = Long.MAX_VALUE;
     private long eventProcessorWaitTimeInMs = DEFAULT_EVENT_PROCESSOR_WAIT_TIME;
+    private int checkpointIntervalInEvents = ProcessedEventsTracker.DEFAULT_CHECKPOINT_INTERVAL_IN_EVENTS;
+    private long checkpointIntervalInMs = ProcessedEventsTracker.DEFAULT_CHECKPOINT_INTERVAL_IN_MS;
+    private DurabilityMode durabilityMode = DurabilityMode.NONE;
+    private int groupCommitMaxBatchSize = DEFAULT_GROUP_COMMIT_MAX_BATCH_SIZE;
+    private long groupCommitMaxLingerTimeInMs = DEFAULT_GROUP_COMMIT_MAX_LINGER_TIME;
+    private int eventProcessorSpinCount;
+    private int tailBufferSize = DEFAULT_TAIL_BUFFER_SIZE;
+    private boolean tailBufferCachesPayloads;
+    private CompressionCodec compressionCodec;
+    private int compressionBlockSizeInBytes = CompressedLogFile.DEFAULT_BLOCK_SIZE_IN_BYTES;
+    private long compressedBlockCacheSizeInBytes = DEFAULT_COMPRESSED_BLOCK_CACHE_SIZE_IN_BYTES;
+    private long compactionTimeIntervalInMs = DEFAULT_COMPACTION_TIME_INTERVAL;
+    private String replicaDataDirPath;
+    private ReplicationTarget replicationTarget;
+    private ReplicationMode replicationMode = ReplicationMode.ASYNC;
+    private long replicationTimeIntervalInMs = DEFAULT_REPLICATION_TIME_INTERVAL;
+    private long replicationTimeoutInMs = DEFAULT_REPLICATION_TIMEOUT;
+    private IngestionMode ingestionMode = IngestionMode.DIRECT;
+    private int ringBufferSize = DEFAULT_RING_BUFFER_SIZE;
 
-    private Segment currentSegment;
+    private volatile Segment currentSegment;
     private Path logDirPath;
-    private EventProcessor<T> eventProcessor;
+    private ConcurrentSkipListMap<Long, SegmentName> segmentDirectory;
+    private SegmentManifest segmentManifest;
+    private HighWatermark highWatermark;
+    private TailBuffer<T> tailBuffer;
+    private Map<String, ProcessedEventsTracker> processedEventsTrackers;
+    private Map<String, Thread> eventProcessors;
     private SegmentCleaner segmentCleaner;
+    private SegmentCompactor segmentCompactor;
+    private SegmentReplicator segmentReplicator;
+    private Object segmentMaintenanceLock;
+    private GroupCommitter groupCommitter;
+    private IngestionRingBuffer ingestionRingBuffer;
+    private IngestionWriter ingestionWriter;
+    private SegmentRoller segmentRoller;
+    private CompletableFuture<Segment> pendingRoll;
+    private EventStoreMetrics metrics;
+    private AtomicBoolean closing;
+    private volatile boolean closed;
 
     private EventStore() {
     }
 
-    public synchronized void write(Object payload) throws IOException {
+    public void write(Object payload) throws IOException {
+        long startTimeInNanos = System.nanoTime();
+        if (this.ingestionRingBuffer != null) {
+            // Nothing to wait for without a durability or replication promise, the write is done once it is in the ring.
+            boolean awaitCommit = this.durabilityMode != DurabilityMode.NONE || this.replicationMode == ReplicationMode.SYNC;
+            CompletableFuture<Long> append = this.publish(payload, awaitCommit);
+            if (awaitCommit) {
+                this.waitForCommit(this.commit(append));
+            }
+        } else if (this.durabilityMode != DurabilityMode.GROUP_COMMIT && this.replicationMode != ReplicationMode.SYNC) {
+            this.append(payload);
+        } else {
+            this.waitForCommit(this.writeAsync(payload));
+        }
+        this.metrics.recordWrite(startTimeInNanos);
+    }
+
+    /**
+     * Write the payload without waiting for it to be forced to disk.
+     *
+     * @param payload The payload.
+     * @return Future completed with the offset of the event once it is as durable as the durability mode of the store promises.
+     * With the RING_BUFFER ingestion mode, it is completed by the writer thread, which then runs the dependent actions.
+     */
+    public CompletableFuture<Long> writeAsync(Object payload) {
+        CompletableFuture<Long> append;
+        try {
+            append = this.ingestionRingBuffer != null ? this.publish(payload, true) : CompletableFuture.completedFuture(this.append(payload));
+        } catch (IOException e) {
+            CompletableFuture<Long> failedFuture = new CompletableFuture<>();
+            failedFuture.completeExceptionally(e);
+            return failedFuture;
+        }
+
+        return this.commit(append);
+    }
+
+    /**
+     * @param append Future of the offset of an event, completed once the event is appended.
+     * @return Future completed with the offset once the event is as durable as the durability mode of the store promises.
+     */
+    private CompletableFuture<Long> commit(CompletableFuture<Long> append) {
+        CompletableFuture<Long> commit = this.durabilityMode == DurabilityMode.GROUP_COMMIT
+                ? append.thenCompose(this.groupCommitter::commit)
+                : append;
+        if (this.replicationMode == ReplicationMode.SYNC) {
+            return commit.thenCompose(this.segmentReplicator::awaitReplication);
+        }
+
+        return commit;
+    }
+
+    /**
+     * Write the payload when the returned mono is subscribed to, for producers that must not block.
+     * The mono completes with the offset of the event once it is as durable as the durability mode of the store
+     * promises. Forcing every write to disk blocks, so with FSYNC_PER_WRITE the write runs on the elastic scheduler.
+     */
+    public Mono<Long> writeReactive(Object payload) {
+        Mono<Long> write = Mono.defer(() -> Mono.fromFuture(this.writeAsync(payload)));
+        if (this.durabilityMode == DurabilityMode.FSYNC_PER_WRITE) {
+            return write.subscribeOn(Schedulers.elastic());
+        }
+
+        return write;
+    }
+
+    /**
+     * Force everything written to the active segment to disk.
+     * Segments are forced when they roll, so this covers every write made so far, once the events still in the
+     * ingestion ring buffer are appended.
+     */
+    public void force() throws IOException {
+        if (this.ingestionRingBuffer != null) {
+            this.ingestionRingBuffer.awaitAppended();
+        }
+        this.currentSegment.force();
+    }
+
+    /**
+     * Stop the store. The writes accepted so far are appended and committed, writes still waiting for the follower
+     * fail, and the processors stop after their current event with their trackers flushed. The active segment is then
+     * forced and closed, the cached segments are released and the metrics unregistered. Writes to a closed store fail.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!this.closing.compareAndSet(false, true)) {
+            return;
+        }
+        log.info("Closing {}.", this.name);
+
+        // Producers cannot claim slots any more, and the writer stops once it has appended the slots claimed before.
+        if (this.ingestionRingBuffer != null) {
+            this.ingestionRingBuffer.close();
+            this.join(this.ingestionWriter);
+        }
+
+        for (Thread eventProcessor : this.eventProcessors.values()) {
+            this.stop(eventProcessor);
+        }
+        for (ProcessedEventsTracker processedEventsTracker : this.processedEventsTrackers.values()) {
+            processedEventsTracker.flush();
+        }
+        this.stop(this.segmentCleaner);
+        this.stop(this.segmentCompactor);
+
+        synchronized (this) {
+            this.closed = true;
+            // The roller may already have sealed the active segment, the store is left on the segment it created.
+            if (this.pendingRoll != null) {
+                this.rollSegmentIfDue();
+            }
+            this.currentSegment.force();
+            this.currentSegment.close();
+        }
+
+        this.stop(this.groupCommitter);
+        this.stop(this.segmentRoller);
+        this.stop(this.segmentReplicator);
+
+        for (Segment segment : this.segmentCache.clear()) {
+            segment.release();
+        }
+        this.metrics.unregister();
+        log.info("Closed {}.", this.name);
+    }
+
+    private void stop(Thread thread) throws IOException {
+        if (thread != null) {
+            thread.interrupt();
+            this.join(thread);
+        }
+    }
+
+    private void join(Thread thread) throws IOException {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("Interrupted while waiting for %s to stop.", thread.getName()));
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.closed) {
+            throw new IOException(String.format("%s is closed.", this.name));
+        }
+    }
+
+    /**
+     * Write a batch of payloads with one acquisition of the store lock. The batch is split across segments when
+     * the active segment fills up, and each segment gets its share in one write to the log and one to the index.
+     * With the RING_BUFFER ingestion mode, the batch takes consecutive slots of the ring. For a batch larger than the
+     * ring, the ring is paused and drained and the batch appended directly, so its offsets stay consecutive.
+     *
+     * @param payloads The payloads, written in iteration order.
+     * @return The offsets assigned to the payloads.
+     */
+    public OffsetRange writeAll(Collection<?> payloads) throws IOException {
+        long startTimeInNanos = System.nanoTime();
+        List<byte[]> serializedPayloads = new ArrayList<>(payloads.size());
+        for (Object payload : payloads) {
+            serializedPayloads.add(this.encode(payload));
+        }
+        this.metrics.recordSerialization(startTimeInNanos);
+
+        OffsetRange offsetRange;
+        if (this.ingestionRingBuffer != null && !serializedPayloads.isEmpty()
+                && serializedPayloads.size() <= this.ingestionRingBuffer.getCapacity()) {
+            CompletableFuture<Long> appendOfLast = new CompletableFuture<>();
+            this.ingestionRingBuffer.publishAll(serializedPayloads, appendOfLast);
+            long lastOffset = this.waitForCommit(appendOfLast);
+            offsetRange = new OffsetRange(lastOffset - serializedPayloads.size() + 1, lastOffset);
+        } else if (this.ingestionRingBuffer != null && !serializedPayloads.isEmpty()) {
+            // The events already in the ring go first, and no other event is appended before the batch is.
+            this.ingestionRingBuffer.pause();
+            try {
+                offsetRange = this.appendAll(serializedPayloads);
+            } finally {
+                this.ingestionRingBuffer.resume();
+            }
+        } else {
+            offsetRange = this.appendAll(serializedPayloads);
+        }
+        if (this.durabilityMode == DurabilityMode.GROUP_COMMIT && offsetRange.getNumberOfOffsets() > 0) {
+            this.waitForCommit(this.groupCommitter.commit(offsetRange.getLastOffset()));
+        }
+        if (this.replicationMode == ReplicationMode.SYNC && offsetRange.getNumberOfOffsets() > 0) {
+            this.waitForCommit(this.segmentReplicator.awaitReplication(offsetRange.getLastOffset()));
+        }
+
+        this.metrics.recordWrite(startTimeInNanos);
+        return offsetRange;
+    }
+
+    private long append(Object payload) throws IOException {
+        long startTimeInNanos = System.nanoTime();
+        byte[] serializedPayload = this.encode(payload);
+        this.metrics.recordSerialization(startTimeInNanos);
+        return this.appendSerialized(serializedPayload);
+    }
+
+    /**
+     * Serialize the payload outside of any lock and put it in the ingestion ring buffer.
+     *
+     * @param trackAppend Whether to return a future of the offset of the event, which costs an allocation.
+     * @return Future completed with the offset once the event is appended, null if trackAppend is false.
+     */
+    private CompletableFuture<Long> publish(Object payload, boolean trackAppend) throws IOException {
+        long startTimeInNanos = System.nanoTime();
+        byte[] serializedPayload = this.encode(payload);
+        this.metrics.recordSerialization(startTimeInNanos);
+
+        CompletableFuture<Long> append = trackAppend ? new CompletableFuture<>() : null;
+        this.ingestionRingBuffer.publish(serializedPayload, append);
+        return append;
+    }
+
+    /**
+     * The payloads written are not checked against the type of the store, the codec decides what it accepts.
+     * Null payloads are rejected, a processor could not tell them from an event that is missing.
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] encode(Object payload) throws IOException {
+        if (payload == null) {
+            throw new IllegalArgumentException(String.format("Cannot write a null payload to %s.", this.name));
+        }
+        return this.codec.encode((T) payload);
+    }
+
+    private synchronized long appendSerialized(byte[] serializedPayload) throws IOException {
+        this.ensureOpen();
+        this.rollSegmentIfDue();
+
+        int positionWithinSegment = this.currentSegment.writeSerialized(serializedPayload);
+        if (this.durabilityMode == DurabilityMode.FSYNC_PER_WRITE) {
+            this.currentSegment.force();
+        }
+
+        long offset = this.currentSegment.getSegmentName().getNumberOfEventsBefore() + positionWithinSegment;
+        this.requestRollIfDue();
+        if (this.tailBuffer != null) {
+            this.tailBuffer.add(offset, serializedPayload);
+        }
+        this.highWatermark.advanceTo(offset + 1);
+        this.metrics.markWritten(1, serializedPayload.length);
+        this.reweighActiveSegmentIfRemapped();
+        return offset;
+    }
+
+    /**
+     * Append a batch of payloads. When the append fails part way, the events appended before the failure are kept
+     * and the high watermark moves past them, and a {@link PartialAppendException} with their offsets is thrown.
+     */
+    synchronized OffsetRange appendAll(List<byte[]> serializedPayloads) throws IOException {
+        this.ensureOpen();
+        long firstOffset = -1;
+        long lastOffset = -1;
+        int written = 0;
+
+        try {
+            while (written < serializedPayloads.size()) {
+                this.rollSegmentIfDue();
+
+                int numberOfEventsInSegment = this.currentSegment.getNumberOfEvents();
+                long offsetOfNextEvent = this.currentSegment.getSegmentName().getNumberOfEventsBefore() + numberOfEventsInSegment;
+                // The segment takes the payloads up to its max number of events.
+                int endIndex = (int) Math.min(serializedPayloads.size(), (long) written + this.maxSegmentNumberOfEvents - numberOfEventsInSegment);
+                int writtenToSegment = this.currentSegment.writeAll(serializedPayloads.subList(0, endIndex), written, this.maxEventLogSegmentFileSizeInBytes);
+                if (firstOffset < 0) {
+                    firstOffset = offsetOfNextEvent;
+                }
+                lastOffset = offsetOfNextEvent + writtenToSegment - 1;
+                written += writtenToSegment;
+                this.requestRollIfDue();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (written > 0) {
+                log.error("Appended {} of a batch of {} events under {} before failing.", written, serializedPayloads.size(), this.name);
+                if (this.durabilityMode == DurabilityMode.FSYNC_PER_WRITE) {
+                    this.currentSegment.force();
+                }
+                this.markAppended(serializedPayloads, written, firstOffset);
+                throw new PartialAppendException(String.format("Appended %d of a batch of %d events under %s before failing.",
+                        written, serializedPayloads.size(), this.name), new OffsetRange(firstOffset, lastOffset), e);
+            }
+            throw e;
+        }
+
+        if (this.durabilityMode == DurabilityMode.FSYNC_PER_WRITE) {
+            this.currentSegment.force();
+        }
+
+        if (written > 0) {
+            this.markAppended(serializedPayloads, written, firstOffset);
+        }
+        log.debug("Wrote a batch of {} events under {}.", written, this.name);
+        return firstOffset < 0 ? new OffsetRange(0, -1) : new OffsetRange(firstOffset, lastOffset);
+    }
+
+    /**
+     * Make the first events of a batch, appended from firstOffset on, visible to readers.
+     */
+    private void markAppended(List<byte[]> serializedPayloads, int written, long firstOffset) {
+        long writtenBytes = 0;
+        for (int i = 0; i < written; i++) {
+            if (this.tailBuffer != null) {
+                this.tailBuffer.add(firstOffset + i, serializedPayloads.get(i));
+            }
+            writtenBytes += serializedPayloads.get(i).length;
+        }
+        this.highWatermark.advanceTo(firstOffset + written);
+        this.metrics.markWritten(written, writtenBytes);
+        this.reweighActiveSegmentIfRemapped();
+    }
 
-        if (this.currentSegment.getEventLogSegmentFileSize() >= this.maxEventLogSegmentFileSizeInBytes) {
-            this.currentSegment = this.getOrCreateAndGetSegmentFromCache(new SegmentName(this.currentSegment.getEventOffset() + this.currentSegment.getSegmentName().getNumberOfEventsBefore()));
+    /**
+     * The index of the active segment is mapped again, larger, as it fills up, so its weight in the segment cache
+     * is updated for the mapped bytes limit to count it.
+     */
+    private void reweighActiveSegmentIfRemapped() {
+        long mappedBytes = this.currentSegment.getMappedBytes();
+        if (mappedBytes != this.weighedActiveSegmentMappedBytes) {
+            this.weighedActiveSegmentMappedBytes = mappedBytes;
+            this.segmentCache.reweigh(this.currentSegment.getSegmentName());
+        }
+    }
+
+    private long waitForCommit(CompletableFuture<Long> commit) throws IOException {
+        try {
+            return commit.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the write to be committed.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Switch to the next segment once the active one is due to roll. With a segment roller, the roll is usually
+     * requested by the write that filled the active segment and done by the time the next write comes, so the switch
+     * is only a swap.
+     */
+    private void rollSegmentIfDue() throws IOException {
+        Segment fullSegment = this.currentSegment;
+        if (!this.isRollDue(fullSegment)) {
+            return;
+        }
+
+        Segment nextSegment;
+        if (this.segmentRoller == null) {
+            nextSegment = this.sealAndCreateNextSegment(fullSegment);
+        } else {
+            CompletableFuture<Segment> roll = this.pendingRoll != null ? this.pendingRoll : this.segmentRoller.roll(fullSegment);
+            this.pendingRoll = null;
+            try {
+                nextSegment = this.segmentRoller.awaitRoll(roll);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.pendingRoll = roll;
+                throw new InterruptedIOException("Interrupted while waiting for the next segment.");
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            }
         }
 
-        this.currentSegment.write(payload);
+        this.segmentCache.put(nextSegment.getSegmentName(), nextSegment);
+        this.segmentDirectory.put(nextSegment.getSegmentName().getNumberOfEventsBefore(), nextSegment.getSegmentName());
+        this.currentSegment = nextSegment;
+        this.metrics.markSegmentRolled();
+    }
+
+    /**
+     * Roll the active segment if it is due while no write comes, which only happens once it is older than the max
+     * age. Called by the segment roller, which does the roll here as the store is idle.
+     */
+    synchronized void rollIdleSegmentIfDue() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.requestRollIfDue();
+        if (this.pendingRoll != null) {
+            log.debug("Rolling idle segment {} under {}.", this.currentSegment.getSegmentName(), this.name);
+            this.rollSegmentIfDue();
+        }
+    }
+
+    /**
+     * Hand the active segment to the segment roller once the write that just happened made it due to roll.
+     */
+    private void requestRollIfDue() throws IOException {
+        if (this.segmentRoller != null && this.pendingRoll == null && this.isRollDue(this.currentSegment)) {
+            this.pendingRoll = this.segmentRoller.roll(this.currentSegment);
+            log.debug("Requested the roll of {} under {}.", this.currentSegment.getSegmentName(), this.name);
+        }
+    }
+
+    /**
+     * A segment is due to roll once its log reaches the max size, it holds the max number of events or its first
+     * event is older than the max age.
+     */
+    private boolean isRollDue(Segment segment) throws IOException {
+        return segment.getEventLogSegmentFileSize() >= this.maxEventLogSegmentFileSizeInBytes
+                || segment.getNumberOfEvents() >= this.maxSegmentNumberOfEvents
+                || (this.maxSegmentAgeInMs != Long.MAX_VALUE && segment.getNumberOfEvents() > 0
+                && System.currentTimeMillis() - segment.getEarliestEventCreateTime() >= this.maxSegmentAgeInMs);
+    }
+
+    /**
+     * Seal a full segment and create the one that follows it. Nothing is written to the full segment any more, so
+     * the roller does this without holding the monitor of the store. The next segment is opened and its index
+     * mapped for as many events as the full segment holds.
+     */
+    Segment sealAndCreateNextSegment(Segment fullSegment) throws IOException {
+        if (this.durabilityMode != DurabilityMode.NONE) {
+            fullSegment.force();
+        }
+        fullSegment.close();
+
+        // The segment is recorded as sealed before the next one exists, so the manifest always points to the active segment.
+        SegmentManifest.Entry sealedSegment = new SegmentManifest.Entry(fullSegment.getSegmentName(),
+                fullSegment.getNumberOfEvents(), fullSegment.getEventLogSegmentFileSize());
+        this.segmentManifest.seal(sealedSegment);
+        Segment nextSegment = new Segment(this.logDirPath.toString(), new SegmentName(sealedSegment.getNumberOfEventsBeforeNextSegment()),
+                this.segmentConfig);
+        nextSegment.preallocate(Math.min(sealedSegment.getNumberOfEvents(), this.maxSegmentNumberOfEvents));
+        log.debug("Sealed {} with {} events under {}.", fullSegment.getSegmentName(), sealedSegment.getNumberOfEvents(), this.name);
+        return nextSegment;
     }
 
     public T read(long eventNumber) throws IOException {
+        long startTimeInNanos = System.nanoTime();
+        try {
+            return this.readPayload(eventNumber);
+        } finally {
+            this.metrics.recordRead(startTimeInNanos);
+        }
+    }
+
+    private T readPayload(long eventNumber) throws IOException {
         log.debug("Trying to read eventNumber {} under {}.", eventNumber, this.name);
+        T payloadFromTail = this.readFromTail(eventNumber);
+        if (payloadFromTail != null) {
+            return payloadFromTail;
+        }
+
         Segment segment = this.getSegment(eventNumber);
         if (segment == null) {
             log.error("No file segment present for the eventNumber: {} under {}.", eventNumber, this.name);
             return null;
         }
 
-        if (segment.getEventOffset() == 0) {
+        if (segment.getNumberOfEvents() == 0) {
             log.debug("File Segment for eventNumber {} under {} is empty.", eventNumber, this.name);
             return null;
         }
 
         int eventOffsetWithinSegment = (int) (eventNumber - segment.getSegmentName().getNumberOfEventsBefore());
-        String serializedEvent = segment.read(eventOffsetWithinSegment);
-        Event event = Event.from(serializedEvent);
-        return event.getPayload(this.clazz);
+        Event event = segment.read(eventOffsetWithinSegment);
+        if (event == null) {
+            log.debug("EventNumber {} under {} is not written yet.", eventNumber, this.name);
+            return null;
+        }
+
+        return this.getPayload(event);
     }
 
-    public Segment[] getAllSegments() throws IOException {
-        return Files.list(this.logDirPath).map(path -> path.getFileName().toString())
-                .filter(fileName -> fileName.startsWith(SEGMENT))
-                .map(this::getSegmentFileNameWithoutExtension)
-                .distinct()
-                .map(SegmentName::from)
-                .map(segmentName -> {
-                    try {
-                        return new Segment(this.logDirPath.toString(), segmentName);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .toArray(Segment[]::new);
-    }
-
-    private Segment getSegment(long targetEventOffset) throws IOException {
-        SegmentName[] segmentNameEntities = Files.list(this.logDirPath).map(path -> path.getFileName().toString())
-                .filter(fileName -> fileName.startsWith(SEGMENT))
-                .map(this::getSegmentFileNameWithoutExtension)
-                .distinct()
-                .map(SegmentName::from)
-                .toArray(SegmentName[]::new);
-
-        Arrays.sort(segmentNameEntities, Comparator.comparingLong(SegmentName::getNumberOfEventsBefore));
+    /**
+     * Read a recently written event from memory.
+     *
+     * @param eventNumber The eventNumber.
+     * @return The payload, null if the event is not written yet or no longer in the tail buffer.
+     */
+    public T readFromTail(long eventNumber) throws IOException {
+        if (this.tailBuffer == null) {
+            return null;
+        }
 
-        int low = 0;
-        int high = segmentNameEntities.length - 1;
+        return this.tailBuffer.get(eventNumber);
+    }
 
-        while (low <= high) {
-            int mid = low + (high - low) / 2;
+    /**
+     * Number of events the follower has, equal to the high watermark when the store is not replicated.
+     */
+    public long getReplicatedHighWatermark() {
+        return this.segmentReplicator == null ? this.getHighWatermark() : this.segmentReplicator.getReplicatedHighWatermark();
+    }
 
-            if (segmentNameEntities[mid].getNumberOfEventsBefore() == targetEventOffset) {
-                return this.getOrCreateAndGetSegmentFromCache(segmentNameEntities[mid]);
-            } else if (segmentNameEntities[mid].getNumberOfEventsBefore() > targetEventOffset) {
-                if (mid - 1 >= 0 && segmentNameEntities[mid - 1].getNumberOfEventsBefore() <= targetEventOffset) {
-                    return this.getOrCreateAndGetSegmentFromCache(segmentNameEntities[mid - 1]);
-                } else {
-                    high = mid - 1;
-                }
+    /**
+     * Number of events written to the store that the follower does not have yet.
+     */
+    public long getReplicationLag() {
+        return Math.max(0, this.getHighWatermark() - this.getReplicatedHighWatermark());
+    }
+
+    public Collection<Path> getProcessedEventsTrackerFilePaths() {
+        List<Path> trackerFilePaths = new ArrayList<>();
+        for (ProcessedEventsTracker processedEventsTracker : this.processedEventsTrackers.values()) {
+            trackerFilePaths.add(processedEventsTracker.getFilePath());
+        }
+
+        return trackerFilePaths;
+    }
+
+    /**
+     * Number of events written to the store so far.
+     */
+    public long getHighWatermark() {
+        return this.highWatermark.get();
+    }
+
+    /**
+     * Wait until an event is written to the store.
+     *
+     * @param eventNumber The eventNumber to wait for.
+     * @param timeout     Maximum time to wait, Long.MAX_VALUE to wait until the event is written.
+     * @param unit        Unit of the timeout.
+     * @return True if the event is written, false if the timeout elapsed first.
+     */
+    public boolean awaitEvent(long eventNumber, long timeout, TimeUnit unit) throws InterruptedException {
+        return this.highWatermark.await(eventNumber, timeout, unit);
+    }
+
+    /**
+     * Wait until an event is written, or until the waiting readers are woken up because a consumer group was reset.
+     *
+     * @param wakeUpCount The result of {@link #getWakeUpCount()} read before the reader looked for the event.
+     * @return True if the event is written, false if the timeout elapsed or the readers were woken up first.
+     */
+    public boolean awaitEvent(long eventNumber, long wakeUpCount, long timeout, TimeUnit unit) throws InterruptedException {
+        return this.highWatermark.await(eventNumber, wakeUpCount, timeout, unit);
+    }
+
+    /**
+     * Run a listener once, on the thread of the writer, when an event is written. It must not block.
+     */
+    public void onEventWritten(long eventNumber, Runnable listener) {
+        this.highWatermark.onEventWritten(eventNumber, listener);
+    }
+
+    /**
+     * Events of the store from an eventNumber on, followed by the events written later. Events are only read
+     * as the subscriber requests them, on the elastic scheduler.
+     *
+     * @see #tail(long, Scheduler)
+     */
+    public Flux<T> tail(long fromEventNumber) {
+        return this.tail(fromEventNumber, Schedulers.elastic());
+    }
+
+    /**
+     * Events of the store from an eventNumber on, followed by the events written later. The flux never completes.
+     * Events are read only as the subscriber requests them, and no thread is held while waiting for a write.
+     * The subscriber does not hold back the purging of segments like a consumer group does, so the flux fails
+     * with {@link com.kevi793.EventStorageAndProcessing.exception.PurgedEventException} if it falls behind the purge.
+     *
+     * @param scheduler Scheduler the events are read and emitted on.
+     */
+    public Flux<T> tail(long fromEventNumber, Scheduler scheduler) {
+        return Flux.create(sink -> new TailEmitter<>(this, sink, scheduler, fromEventNumber).start());
+    }
+
+    /**
+     * Replay the events from fromEventNumber up to, not including, toEventNumber, for instance to reprocess them
+     * after fixing a consumer. Segments are read and decoded in parallel, so the consumer is called from parallelism
+     * threads at once and must be idempotent. The processed events of the consumer groups are not touched.
+     *
+     * @param toEventNumber End of the range, lowered to the high watermark.
+     * @see SegmentReplayer
+     */
+    public void replay(long fromEventNumber, long toEventNumber, Consumer<T> consumer, int parallelism) throws IOException {
+        new SegmentReplayer<>(this, parallelism).replay(fromEventNumber, toEventNumber, consumer);
+    }
+
+    /**
+     * Replay the events from fromEventNumber up to, not including, toEventNumber, the events with the same key
+     * in the order they were written.
+     *
+     * @param keyExtractor Key of a payload.
+     * @see #replay(long, long, Consumer, int)
+     */
+    public void replay(long fromEventNumber, long toEventNumber, Consumer<T> consumer, int parallelism,
+                       Function<? super T, ?> keyExtractor) throws IOException {
+        new SegmentReplayer<>(this, parallelism).replayOrderedByKey(fromEventNumber, toEventNumber, consumer, keyExtractor);
+    }
+
+    /**
+     * Number of times the waiting readers were woken up without a write.
+     */
+    public long getWakeUpCount() {
+        return this.highWatermark.getWakeUpCount();
+    }
+
+    /**
+     * Find the first event created at or after a time, for instance to replay the events written since then.
+     * Segments are bisected on the create time of their last event, then the time index of the segment found
+     * narrows down the events that are read.
+     *
+     * @param timestamp Time in ms since the epoch.
+     * @return The eventNumber of the event, the high watermark if every event was created before the timestamp.
+     */
+    public long offsetForTimestamp(long timestamp) throws IOException {
+        long highWatermark = this.getHighWatermark();
+        List<SegmentName> segmentNames = new ArrayList<>(this.segmentDirectory.values());
+
+        int low = 0;
+        int high = segmentNames.size();
+        while (low < high) {
+            int mid = low + (high - low) / 2;
+            Segment segment = this.getSegment(segmentNames.get(mid).getNumberOfEventsBefore());
+            if (segment != null && segment.getLatestEventCreateTime() >= timestamp) {
+                high = mid;
             } else {
-                if (mid + 1 <= high && segmentNameEntities[mid + 1].getNumberOfEventsBefore() > targetEventOffset) {
-                    return this.getOrCreateAndGetSegmentFromCache(segmentNameEntities[mid]);
-                } else {
-                    low = mid + 1;
-                }
+                low = mid + 1;
+            }
+        }
+
+        // The create times only go up as long as the clock does, so the following segments are looked at too.
+        for (int i = low; i < segmentNames.size(); i++) {
+            Segment segment = this.getSegment(segmentNames.get(i).getNumberOfEventsBefore());
+            if (segment == null) {
+                continue;
+            }
+
+            int positionWithinSegment = segment.findPositionForTimestamp(timestamp);
+            if (positionWithinSegment >= 0) {
+                return segment.getSegmentName().getNumberOfEventsBefore() + positionWithinSegment;
             }
         }
 
-        return null;
+        log.debug("Every event under {} was created before {}.", this.name, timestamp);
+        return highWatermark;
+    }
+
+    public T getPayload(Event event) throws IOException {
+        return this.codec.decode(event.getPayloadBuffer());
+    }
+
+    public Segment[] getAllSegments() throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        for (SegmentName segmentName : this.segmentDirectory.values()) {
+            segments.add(this.getOrCreateAndGetSegmentFromCache(segmentName));
+        }
+
+        return segments.toArray(new Segment[0]);
+    }
+
+    /**
+     * Names of all the segments of the store, ordered by the number of events before them.
+     */
+    public Collection<SegmentName> getAllSegmentNames() {
+        return Collections.unmodifiableCollection(this.segmentDirectory.values());
+    }
+
+    /**
+     * Delete the files of a segment. The active segment is never deleted.
+     *
+     * @param segmentName The segment to delete.
+     * @return False if the segment is the active segment or is already deleted.
+     */
+    public boolean deleteSegment(SegmentName segmentName) throws IOException {
+        synchronized (this.segmentMaintenanceLock) {
+            if (segmentName.equals(this.currentSegment.getSegmentName())) {
+                log.debug("Not deleting {} under {} as it is the active segment.", segmentName, this.name);
+                return false;
+            }
+
+            if (this.segmentDirectory.remove(segmentName.getNumberOfEventsBefore()) == null) {
+                log.debug("Segment {} under {} is already deleted.", segmentName, this.name);
+                return false;
+            }
+            // Forgotten before its files are deleted, so a crash in between never leaves the manifest pointing to missing files.
+            this.segmentManifest.remove(segmentName);
+
+            Segment segment = this.segmentCache.remove(segmentName);
+            if (segment == null) {
+                segment = new Segment(this.logDirPath.toString(), segmentName, this.segmentConfig);
+            }
+
+            segment.delete();
+            this.metrics.markSegmentDeleted();
+            log.debug("Deleted segment {} under {}.", segmentName, this.name);
+            return true;
+        }
+    }
+
+    /**
+     * The oldest sealed segment, from the manifest, null if every event is in the active segment.
+     */
+    public SegmentManifest.Entry getOldestSealedSegment() {
+        return this.segmentManifest.getOldestEntry();
+    }
+
+    /**
+     * The sealed segment distance segments after the first one that starts at or after the given one, null if fewer
+     * sealed segments follow it.
+     */
+    public SegmentManifest.Entry getSealedSegmentAfter(SegmentName segmentName, int distance) {
+        return this.segmentManifest.getEntryAfter(segmentName, distance);
+    }
+
+    /**
+     * Size of the logs of the store, taken from the manifest for the sealed segments.
+     */
+    public long getSizeInBytes() throws IOException {
+        Segment activeSegment = this.currentSegment;
+        // A segment being rolled is already in the manifest.
+        long activeSegmentSizeInBytes = this.segmentManifest.contains(activeSegment.getSegmentName()) ? 0 : activeSegment.getEventLogSegmentFileSize();
+        return this.segmentManifest.getLogFileSizeInBytes() + activeSegmentSizeInBytes;
+    }
+
+    /**
+     * Compress the log file of a sealed segment with the codec of the store. The active segment is never compressed.
+     * A segment already compressed is found from its files, without opening it.
+     *
+     * @param segmentName The segment to compress.
+     * @return False if the segment is the active segment and is left as is.
+     */
+    public boolean compressSegment(SegmentName segmentName) throws IOException {
+        if (this.compressionCodec == null) {
+            throw new IllegalStateException(String.format("No compression codec is set for %s.", this.name));
+        }
+
+        synchronized (this.segmentMaintenanceLock) {
+            if (segmentName.equals(this.currentSegment.getSegmentName())) {
+                return false;
+            }
+            if (!this.segmentDirectory.containsKey(segmentName.getNumberOfEventsBefore())
+                    || Segment.isCompressed(this.logDirPath.toString(), segmentName)) {
+                return true;
+            }
+
+            Segment segment = this.getOrCreateAndGetSegmentFromCache(segmentName);
+            if (!segment.isCompressed()) {
+                segment.compress(this.compressionCodec, this.compressionBlockSizeInBytes);
+                log.debug("Compressed segment {} under {}.", segmentName, this.name);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Find the segment holding an event.
+     *
+     * @param targetEventOffset The eventNumber.
+     * @return The segment, null if the event is before the first segment.
+     */
+    public Segment getSegment(long targetEventOffset) throws IOException {
+        // The active segment may still have bytes staged in its write buffers, so it is always read through the writer's instance.
+        Segment activeSegment = this.currentSegment;
+        if (targetEventOffset >= activeSegment.getSegmentName().getNumberOfEventsBefore()) {
+            return activeSegment;
+        }
+
+        Map.Entry<Long, SegmentName> entry = this.segmentDirectory.floorEntry(targetEventOffset);
+        if (entry == null) {
+            return null;
+        }
+
+        return this.getOrCreateAndGetSegmentFromCache(entry.getValue());
     }
 
     private String getSegmentFileNameWithoutExtension(String segmentFileNameWithExtension) {
@@ -132,47 +920,300 @@ public class EventStore<T> {
     }
 
     private void init() throws IOException {
+        if (this.replicationMode == ReplicationMode.SYNC && this.replicaDataDirPath == null && this.replicationTarget == null) {
+            throw new IllegalArgumentException(String.format("%s has no replica to wait for.", this.name));
+        }
+
+        if (this.codec == null) {
+            this.codec = new JacksonCodec<>(this.clazz);
+        }
+
         this.logDirPath = this.getLogDirOrCreateIfNotExists();
-        this.segmentCache = new FIFOCache<>(this.segmentCacheSize);
-        this.currentSegment = this.getLatestOrCreateSegmentIfNotExists();
+        if (this.compressionCodec != null) {
+            this.compressedBlockCache = new SLRUCache<>(Integer.MAX_VALUE, this.compressedBlockCacheSizeInBytes, block -> block.length, (key, block) -> {
+            });
+            this.segmentConfigBuilder.compressedBlockCache(this.compressedBlockCache);
+        }
+        this.segmentConfig = this.segmentConfigBuilder.build();
+        if (!this.codec.isText() && this.segmentConfig.getRecordFormat() == RecordFormat.TEXT) {
+            throw new IllegalArgumentException(String.format("The codec of %s writes binary payloads, which need the BINARY record format.", this.name));
+        }
+        this.segmentMaintenanceLock = new Object();
+        this.closing = new AtomicBoolean();
+        this.metrics = new EventStoreMetrics(this.name, this);
+        this.segmentCache = new SLRUCache<>(this.segmentCacheSize, this.segmentCacheMaxMappedBytes, Segment::getMappedBytes, this::releaseSegment);
+        this.segmentDirectory = new ConcurrentSkipListMap<>();
+        this.segmentManifest = new SegmentManifest(this.logDirPath, this.durabilityMode != DurabilityMode.NONE);
+        this.loadSegmentDirectory();
+        this.currentSegment = this.openActiveSegment();
+        if (this.tailBufferSize > 0) {
+            this.tailBuffer = new TailBuffer<>(this.tailBufferSize, this.tailBufferCachesPayloads, this.codec);
+        }
+        this.highWatermark = new HighWatermark(this.currentSegment.getSegmentName().getNumberOfEventsBefore() + this.currentSegment.getNumberOfEvents(),
+                this.eventProcessorSpinCount);
+
+        if (this.ingestionMode == IngestionMode.RING_BUFFER) {
+            // start ingestion writer thread
+            this.ingestionRingBuffer = new IngestionRingBuffer(this.ringBufferSize);
+            this.ingestionWriter = new IngestionWriter(this, this.ingestionRingBuffer, DEFAULT_INGESTION_WRITER_WAIT_TIME);
+            this.ingestionWriter.setName(String.format("%s-ingestion-writer", this.name));
+            this.ingestionWriter.setDaemon(true);
+            this.ingestionWriter.start();
+        }
+
+        if (this.rollSegmentsInBackground) {
+            // start segment roller thread
+            long ageCheckIntervalInMs = this.maxSegmentAgeInMs == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : Math.min(this.maxSegmentAgeInMs, DEFAULT_SEGMENT_AGE_CHECK_TIME_INTERVAL);
+            this.segmentRoller = new SegmentRoller(this, ageCheckIntervalInMs);
+            this.segmentRoller.setName(String.format("%s-segment-roller", this.name));
+            this.segmentRoller.setDaemon(true);
+            this.segmentRoller.start();
+        }
 
-        ProcessedEventsTracker processedEventsTracker = new ProcessedEventsTracker(Paths.get(this.logDirPath.toString(), PROCESSED_EVENTS_TRACKER_FILE_NAME));
+        if (this.durabilityMode == DurabilityMode.GROUP_COMMIT) {
+            // start group committer thread
+            this.groupCommitter = new GroupCommitter(this, this.groupCommitMaxBatchSize, this.groupCommitMaxLingerTimeInMs);
+            this.groupCommitter.setDaemon(true);
+            this.groupCommitter.start();
+        }
 
-        // start event processor thread
-        this.eventProcessor = new EventProcessor<>(processedEventsTracker, this.consumer, this, this.eventProcessorWaitTimeInMs);
-        this.eventProcessor.setDaemon(true);
-        this.eventProcessor.start();
+        // start an event processor thread per consumer group
+        this.processedEventsTrackers = new LinkedHashMap<>();
+        this.eventProcessors = new LinkedHashMap<>();
+        for (ConsumerGroup<T> consumerGroup : this.getConsumerGroups()) {
+            this.startEventProcessor(consumerGroup);
+        }
 
         // start segment cleaner thread
-        this.segmentCleaner = new SegmentCleaner(processedEventsTracker, this, this.segmentCleanupTimeIntervalInMs);
+        this.segmentCleaner = new SegmentCleaner(this, this.segmentCleanupTimeIntervalInMs, this.retainedProcessedSegments,
+                this.retentionSizeInBytes, this.retentionTimeInMs);
         this.segmentCleaner.setDaemon(true);
         this.segmentCleaner.start();
+
+        // start segment replicator thread
+        if (this.replicaDataDirPath != null) {
+            this.replicationTarget = new DirectoryReplicationTarget(Paths.get(this.replicaDataDirPath, this.name));
+        }
+        if (this.replicationTarget != null) {
+            this.segmentReplicator = new SegmentReplicator(this, this.replicationTarget, this.replicationTimeIntervalInMs,
+                    this.replicationTimeoutInMs, this.durabilityMode != DurabilityMode.NONE);
+            this.segmentReplicator.setDaemon(true);
+            this.segmentReplicator.start();
+        }
+
+        // start segment compactor thread
+        if (this.compressionCodec != null) {
+            this.segmentCompactor = new SegmentCompactor(this, this.compactionTimeIntervalInMs);
+            this.segmentCompactor.setDaemon(true);
+            this.segmentCompactor.setName(String.format("%s-segment-compactor", this.name));
+            this.segmentCompactor.start();
+        }
+
+        this.metrics.register(this.logDirPath);
     }
 
-    private Segment getLatestOrCreateSegmentIfNotExists() throws IOException {
+    /**
+     * The consumer given to the builder is the default group, which keeps the tracker of a store with a single consumer.
+     */
+    private List<ConsumerGroup<T>> getConsumerGroups() {
+        List<ConsumerGroup<T>> consumerGroups = new ArrayList<>();
+        if (this.batchConsumer != null) {
+            consumerGroups.add(new ConsumerGroup<>(DEFAULT_CONSUMER_GROUP, this.batchConsumer, this.maxBatchSize, this.maxBatchWaitTimeInMs));
+        } else if (this.consumer != null) {
+            consumerGroups.add(new ConsumerGroup<>(DEFAULT_CONSUMER_GROUP, this.consumer));
+        }
+        consumerGroups.addAll(this.consumerGroups.values());
+
+        return consumerGroups;
+    }
 
-        String[] segments = Files.list(this.logDirPath).map(path -> path.getFileName().toString())
-                .filter(fileName -> fileName.startsWith(SEGMENT))
-                .map(this::getSegmentFileNameWithoutExtension)
-                .toArray(String[]::new);
+    private void startEventProcessor(ConsumerGroup<T> consumerGroup) throws IOException {
+        String trackerFileName = DEFAULT_CONSUMER_GROUP.equals(consumerGroup.getName()) ? PROCESSED_EVENTS_TRACKER_FILE_NAME
+                : PROCESSED_EVENTS_TRACKER_FILE_PREFIX + consumerGroup.getName() + PROCESSED_EVENTS_TRACKER_FILE_EXTENSION;
+        ProcessedEventsTracker processedEventsTracker = new ProcessedEventsTracker(Paths.get(this.logDirPath.toString(), trackerFileName),
+                this.checkpointIntervalInEvents, this.checkpointIntervalInMs);
+        if (processedEventsTracker.getNumberOfEventsProcessedSoFar() > this.getHighWatermark()) {
+            // Events the group processed were dropped when the tail of the active segment was recovered.
+            log.warn("Consumer group {} under {} is past the last event {}. Moving it back.", consumerGroup.getName(), this.name, this.getHighWatermark());
+            processedEventsTracker.reset(this.getHighWatermark());
+        }
 
-        if (segments.length == 0) {
-            return this.getOrCreateAndGetSegmentFromCache(new SegmentName(0));
+        Thread eventProcessor;
+        if (consumerGroup.isBatchConsumer()) {
+            eventProcessor = new BatchEventProcessor<>(processedEventsTracker, consumerGroup.getBatchConsumer(), this,
+                    consumerGroup.getMaxBatchSize(), consumerGroup.getMaxBatchWaitTimeInMs(), this.eventProcessorWaitTimeInMs);
         } else {
-            long maxOffsetSoFar = Long.MIN_VALUE;
-            SegmentName segmentNameOfInterest = null;
+            eventProcessor = new EventProcessor<>(processedEventsTracker, consumerGroup.getConsumer(), this, this.eventProcessorWaitTimeInMs);
+        }
+        eventProcessor.setName(String.format("%s-%s-processor", this.name, consumerGroup.getName()));
+        eventProcessor.setDaemon(true);
+        eventProcessor.start();
+
+        this.processedEventsTrackers.put(consumerGroup.getName(), processedEventsTracker);
+        this.eventProcessors.put(consumerGroup.getName(), eventProcessor);
+        log.debug("Started event processor for consumer group {} under {}.", consumerGroup.getName(), this.name);
+    }
 
-            for (String segment : segments) {
-                SegmentName segmentName = SegmentName.from(segment);
+    /**
+     * Number of events processed so far by a consumer group.
+     *
+     * @param consumerGroupName Name of the group, {@link #DEFAULT_CONSUMER_GROUP} for the consumer given to the builder.
+     */
+    public long getNumberOfEventsProcessedSoFar(String consumerGroupName) {
+        return this.getProcessedEventsTracker(consumerGroupName).getNumberOfEventsProcessedSoFar();
+    }
 
-                if (segmentName.getNumberOfEventsBefore() > maxOffsetSoFar) {
-                    maxOffsetSoFar = segmentName.getNumberOfEventsBefore();
-                    segmentNameOfInterest = segmentName;
-                }
+    /**
+     * Move a consumer group to an event, backwards to process events again or forwards to skip them.
+     * The processor of the group moves before its next event and drops the batch it has not handed over yet.
+     * The group is kept between the first event still stored and the high watermark.
+     *
+     * @param consumerGroupName Name of the group, {@link #DEFAULT_CONSUMER_GROUP} for the consumer given to the builder.
+     * @param eventNumber       The next event the group processes.
+     * @return The eventNumber the group was moved to.
+     */
+    public long resetConsumerGroup(String consumerGroupName, long eventNumber) {
+        ProcessedEventsTracker processedEventsTracker = this.getProcessedEventsTracker(consumerGroupName);
+        long resetEventNumber = Math.min(Math.max(eventNumber, this.segmentDirectory.firstKey()), this.getHighWatermark());
+
+        processedEventsTracker.reset(resetEventNumber);
+        this.highWatermark.wakeUp();
+        log.info("Reset consumer group {} under {} to eventNumber {}.", consumerGroupName, this.name, resetEventNumber);
+        return resetEventNumber;
+    }
+
+    /**
+     * Move a consumer group to the first event created at or after a time.
+     *
+     * @param timestamp Time in ms since the epoch.
+     * @return The eventNumber the group was moved to.
+     * @see #offsetForTimestamp(long)
+     */
+    public long resetConsumerGroupToTimestamp(String consumerGroupName, long timestamp) throws IOException {
+        return this.resetConsumerGroup(consumerGroupName, this.offsetForTimestamp(timestamp));
+    }
+
+    private ProcessedEventsTracker getProcessedEventsTracker(String consumerGroupName) {
+        ProcessedEventsTracker processedEventsTracker = this.processedEventsTrackers.get(consumerGroupName);
+        if (processedEventsTracker == null) {
+            throw new IllegalArgumentException(String.format("No consumer group %s under %s.", consumerGroupName, this.name));
+        }
+
+        return processedEventsTracker;
+    }
+
+    public Collection<String> getConsumerGroupNames() {
+        return Collections.unmodifiableCollection(this.processedEventsTrackers.keySet());
+    }
+
+    /**
+     * Copy the configuration of a store that is not initialised yet to a store living in another directory.
+     */
+    @SuppressWarnings("unchecked")
+    private EventStore<T> copyConfiguration(String dataDirPath, String name) {
+        try {
+            EventStore<T> copy = (EventStore<T>) this.clone();
+            copy.dataDirPath = dataDirPath;
+            copy.name = name;
+            // The clone shares the mutable settings, which init of every partition would change for all of them.
+            copy.segmentConfigBuilder = new SegmentConfig.SegmentConfigBuilder(this.segmentConfigBuilder);
+            copy.consumerGroups = new LinkedHashMap<>(this.consumerGroups);
+            if (this.replicaDataDirPath != null) {
+                copy.replicaDataDirPath = Paths.get(this.replicaDataDirPath, this.name).toString();
             }
+            return copy;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Release the files of a segment evicted from the cache. The active segment is kept open for the writer.
+     */
+    private void releaseSegment(SegmentName segmentName, Segment segment) {
+        if (segment == this.currentSegment) {
+            log.debug("Not releasing evicted segment {} under {} as it is the active segment.", segmentName, this.name);
+            return;
+        }
+
+        try {
+            segment.release();
+            log.debug("Released evicted segment {} under {}.", segmentName, this.name);
+        } catch (IOException e) {
+            log.error("Failed to release evicted segment {} under {}. Exception is {}.", segmentName, this.name, e);
+        }
+    }
+
+    public CacheStats getSegmentCacheStats() {
+        return this.segmentCache.getStats();
+    }
+
+    /**
+     * @return Stats of the cache of decompressed blocks, null if the store is not compressed.
+     */
+    public CacheStats getCompressedBlockCacheStats() {
+        return this.compressedBlockCache == null ? null : this.compressedBlockCache.getStats();
+    }
+
+    /**
+     * Latencies, throughput, segment counts, cache hit rates and consumer lag of the store, also registered as an MXBean.
+     */
+    public EventStoreMetrics getMetrics() {
+        return this.metrics;
+    }
 
-            return this.getOrCreateAndGetSegmentFromCache(segmentNameOfInterest);
+    /**
+     * Find the sealed segments in the manifest. A store without a manifest has its directory listed once, its sealed
+     * segments read and its manifest written.
+     */
+    private void loadSegmentDirectory() throws IOException {
+        if (!this.segmentManifest.load()) {
+            this.createManifest();
         }
+
+        for (SegmentManifest.Entry entry : this.segmentManifest.getEntries()) {
+            this.segmentDirectory.put(entry.getSegmentName().getNumberOfEventsBefore(), entry.getSegmentName());
+        }
+
+        log.debug("Found {} sealed segments under {}.", this.segmentDirectory.size(), this.name);
+    }
+
+    private void createManifest() throws IOException {
+        List<SegmentName> segmentNames;
+        try (Stream<Path> paths = Files.list(this.logDirPath)) {
+            segmentNames = paths.map(path -> path.getFileName().toString())
+                    .filter(fileName -> fileName.startsWith(SEGMENT))
+                    .map(this::getSegmentFileNameWithoutExtension)
+                    .distinct()
+                    .map(SegmentName::from)
+                    .sorted(Comparator.comparingLong(SegmentName::getNumberOfEventsBefore))
+                    .collect(Collectors.toList());
+        }
+
+        // Every segment but the last one is sealed.
+        List<SegmentManifest.Entry> sealedSegments = new ArrayList<>();
+        for (int i = 0; i < segmentNames.size() - 1; i++) {
+            Segment segment = new Segment(this.logDirPath.toString(), segmentNames.get(i), this.segmentConfig);
+            sealedSegments.add(new SegmentManifest.Entry(segment.getSegmentName(), segment.getNumberOfEvents(), segment.getEventLogSegmentFileSize()));
+            segment.release();
+        }
+
+        long numberOfEventsBeforeActiveSegment = segmentNames.isEmpty() ? 0 : segmentNames.get(segmentNames.size() - 1).getNumberOfEventsBefore();
+        this.segmentManifest.sealAll(sealedSegments, numberOfEventsBeforeActiveSegment);
+        log.info("Created the manifest of {} with {} sealed segments.", this.name, sealedSegments.size());
+    }
+
+    /**
+     * Open the segment the manifest points to, or create it. Its tail is checked, as the store may have stopped in
+     * the middle of a write.
+     */
+    private Segment openActiveSegment() throws IOException {
+        SegmentName segmentName = new SegmentName(this.segmentManifest.getNumberOfEventsBeforeActiveSegment());
+        Segment segment = new Segment(this.logDirPath.toString(), segmentName, this.segmentConfig, true);
+        this.segmentCache.put(segmentName, segment);
+        this.segmentDirectory.put(segmentName.getNumberOfEventsBefore(), segmentName);
+        return segment;
     }
 
     private Path getLogDirOrCreateIfNotExists() throws IOException {
@@ -194,11 +1235,34 @@ public class EventStore<T> {
     }
 
     private Segment getOrCreateAndGetSegmentFromCache(SegmentName segmentName) throws IOException {
-        if (this.segmentCache.get(segmentName) == null) {
-            this.segmentCache.put(segmentName, new Segment(this.logDirPath.toString(), segmentName));
+        // Another thread may evict the segment right after it is put, so the instance put is the one returned.
+        Segment segment = this.segmentCache.get(segmentName);
+        if (segment == null) {
+            segment = new Segment(this.logDirPath.toString(), segmentName, this.segmentConfig);
+            this.checkSealedSegmentSize(segment);
+            this.segmentCache.put(segmentName, segment);
         }
 
-        return this.segmentCache.get(segmentName);
+        return segment;
+    }
+
+    /**
+     * Compare the log of a sealed segment with the size the manifest recorded, as the checksum of the manifest only
+     * covers the manifest itself.
+     */
+    private void checkSealedSegmentSize(Segment segment) throws IOException {
+        SegmentManifest.Entry entry = this.segmentManifest.get(segment.getSegmentName());
+        if (entry == null) {
+            return;
+        }
+
+        long logFileSizeInBytes = segment.getEventLogSegmentFileSize();
+        if (logFileSizeInBytes != entry.getLogFileSizeInBytes()) {
+            segment.release();
+            log.error("Log of sealed segment {} under {} is {} bytes, the manifest recorded {} bytes.", segment.getSegmentName(), this.name, logFileSizeInBytes, entry.getLogFileSizeInBytes());
+            throw new CorruptRecordException(String.format("Log of sealed segment %s is %d bytes, the manifest recorded %d bytes.",
+                    segment.getSegmentName(), logFileSizeInBytes, entry.getLogFileSizeInBytes()));
+        }
     }
 
     public static class EventStoreBuilder<T> {
@@ -220,24 +1284,338 @@ public class EventStore<T> {
             return this;
         }
 
+        /**
+         * Roll the active segment once it holds this many events, whatever the size of its log.
+         */
+        public EventStoreBuilder<T> maxSegmentNumberOfEvents(int maxSegmentNumberOfEvents) {
+            this.eventStore.maxSegmentNumberOfEvents = maxSegmentNumberOfEvents;
+            return this;
+        }
+
+        /**
+         * Roll the active segment once its first event is older than this, so a segment of a slow store is not kept
+         * active for ever. The age is checked on writes, and by the segment roller while the store is idle, at most a
+         * second apart. Without the roller an idle store does not roll.
+         */
+        public EventStoreBuilder<T> maxSegmentAgeInMs(long maxSegmentAgeInMs) {
+            this.eventStore.maxSegmentAgeInMs = maxSegmentAgeInMs;
+            return this;
+        }
+
+        /**
+         * Seal full segments and create the next ones on a background thread, on by default. When off, the write
+         * that finds the active segment full does it.
+         */
+        public EventStoreBuilder<T> rollSegmentsInBackground(boolean rollSegmentsInBackground) {
+            this.eventStore.rollSegmentsInBackground = rollSegmentsInBackground;
+            return this;
+        }
+
         public EventStoreBuilder<T> segmentCleanupTimeIntervalInMs(long segmentCleanupTimeIntervalInMs) {
             this.eventStore.segmentCleanupTimeIntervalInMs = segmentCleanupTimeIntervalInMs;
             return this;
         }
 
+        /**
+         * Number of segments every consumer group has processed to keep for replays. The older processed segments
+         * are deleted.
+         */
+        public EventStoreBuilder<T> retainedProcessedSegments(int retainedProcessedSegments) {
+            this.eventStore.retainedProcessedSegments = retainedProcessedSegments;
+            return this;
+        }
+
+        /**
+         * Delete the oldest segments while the logs of the store are larger than this, even if a consumer group has
+         * not processed them. Such a group moves past the deleted events.
+         */
+        public EventStoreBuilder<T> retentionSizeInBytes(long retentionSizeInBytes) {
+            this.eventStore.retentionSizeInBytes = retentionSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Delete the segments whose last event is older than this, even if a consumer group has not processed them.
+         * Such a group moves past the deleted events.
+         */
+        public EventStoreBuilder<T> retentionTimeInMs(long retentionTimeInMs) {
+            this.eventStore.retentionTimeInMs = retentionTimeInMs;
+            return this;
+        }
+
         public EventStoreBuilder<T> eventProcessorWaitTimeInMs(long eventProcessorWaitTimeInMs) {
             this.eventStore.eventProcessorWaitTimeInMs = eventProcessorWaitTimeInMs;
             return this;
         }
 
+        /**
+         * Number of times an idle event processor checks for a new event before it parks until the next write.
+         * Spinning lowers the wakeup latency at the cost of CPU, it is off by default.
+         */
+        public EventStoreBuilder<T> eventProcessorSpinCount(int eventProcessorSpinCount) {
+            this.eventStore.eventProcessorSpinCount = eventProcessorSpinCount;
+            return this;
+        }
+
+        /**
+         * Hand the events over in batches instead of one by one to the consumer given to the builder.
+         *
+         * @param batchConsumer        Consumer of the batches.
+         * @param maxBatchSize         Maximum number of events in a batch.
+         * @param maxBatchWaitTimeInMs Maximum time the first event of a batch waits for the batch to fill up.
+         */
+        public EventStoreBuilder<T> batchConsumer(Consumer<List<T>> batchConsumer, int maxBatchSize, long maxBatchWaitTimeInMs) {
+            this.eventStore.batchConsumer = batchConsumer;
+            this.eventStore.maxBatchSize = maxBatchSize;
+            this.eventStore.maxBatchWaitTimeInMs = maxBatchWaitTimeInMs;
+            return this;
+        }
+
+        /**
+         * Add a consumer group which reads all the events of the store with its own processor thread and tracker.
+         * Segments are deleted only once every group has processed them.
+         *
+         * @param consumerGroupName Name of the group, used in the name of its tracker file. Letters, digits, '.', '_'
+         *                          and '-' only.
+         * @param consumer          Consumer of the events.
+         */
+        public EventStoreBuilder<T> consumerGroup(String consumerGroupName, Consumer<T> consumer) {
+            return this.addConsumerGroup(new ConsumerGroup<>(consumerGroupName, consumer));
+        }
+
+        /**
+         * Add a consumer group which gets the events in batches.
+         *
+         * @see #consumerGroup(String, Consumer)
+         * @see #batchConsumer(Consumer, int, long)
+         */
+        public EventStoreBuilder<T> batchConsumerGroup(String consumerGroupName, Consumer<List<T>> batchConsumer, int maxBatchSize, long maxBatchWaitTimeInMs) {
+            return this.addConsumerGroup(new ConsumerGroup<>(consumerGroupName, batchConsumer, maxBatchSize, maxBatchWaitTimeInMs));
+        }
+
+        private EventStoreBuilder<T> addConsumerGroup(ConsumerGroup<T> consumerGroup) {
+            String consumerGroupName = consumerGroup.getName();
+            if (consumerGroupName == null || !CONSUMER_GROUP_NAME_PATTERN.matcher(consumerGroupName).matches()
+                    || DEFAULT_CONSUMER_GROUP.equals(consumerGroupName)) {
+                throw new IllegalArgumentException(String.format("Invalid consumer group name %s.", consumerGroupName));
+            }
+            if (this.eventStore.consumerGroups.containsKey(consumerGroupName)) {
+                throw new IllegalArgumentException(String.format("Consumer group %s is already added.", consumerGroupName));
+            }
+
+            this.eventStore.consumerGroups.put(consumerGroupName, consumerGroup);
+            return this;
+        }
+
+        public EventStoreBuilder<T> checkpointIntervalInEvents(int checkpointIntervalInEvents) {
+            this.eventStore.checkpointIntervalInEvents = checkpointIntervalInEvents;
+            return this;
+        }
+
+        public EventStoreBuilder<T> checkpointIntervalInMs(long checkpointIntervalInMs) {
+            this.eventStore.checkpointIntervalInMs = checkpointIntervalInMs;
+            return this;
+        }
+
+        public EventStoreBuilder<T> segmentWriteBufferSizeInBytes(int segmentWriteBufferSizeInBytes) {
+            this.eventStore.segmentConfigBuilder.writeBufferSizeInBytes(segmentWriteBufferSizeInBytes);
+            return this;
+        }
+
+        /**
+         * Codec of the payloads, JSON through Jackson by default. Use {@link com.kevi793.EventStorageAndProcessing.store.codec.RawCodec}
+         * to store payloads that are already serialized.
+         */
+        public EventStoreBuilder<T> codec(Codec<T> codec) {
+            this.eventStore.codec = codec;
+            return this;
+        }
+
+        public EventStoreBuilder<T> recordFormat(RecordFormat recordFormat) {
+            this.eventStore.segmentConfigBuilder.recordFormat(recordFormat);
+            return this;
+        }
+
+        /**
+         * Minimum number of events between two entries of the time index of a segment. A smaller interval makes
+         * {@link EventStore#offsetForTimestamp(long)} read fewer events, at the cost of a larger time index.
+         */
+        public EventStoreBuilder<T> timeIndexIntervalInEvents(int timeIndexIntervalInEvents) {
+            this.eventStore.segmentConfigBuilder.timeIndexIntervalInEvents(timeIndexIntervalInEvents);
+            return this;
+        }
+
+        public EventStoreBuilder<T> durabilityMode(DurabilityMode durabilityMode) {
+            this.eventStore.durabilityMode = durabilityMode;
+            return this;
+        }
+
+        public EventStoreBuilder<T> groupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+            this.eventStore.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+            return this;
+        }
+
+        public EventStoreBuilder<T> groupCommitMaxLingerTimeInMs(long groupCommitMaxLingerTimeInMs) {
+            this.eventStore.groupCommitMaxLingerTimeInMs = groupCommitMaxLingerTimeInMs;
+            return this;
+        }
+
+        /**
+         * Number of recently written events kept in memory for consumers that keep up with the writer, 0 to disable.
+         */
+        public EventStoreBuilder<T> tailBufferSize(int tailBufferSize) {
+            this.eventStore.tailBufferSize = tailBufferSize;
+            return this;
+        }
+
+        /**
+         * Keep the payloads deserialized by the first consumer group in the tail buffer, so the other groups get the
+         * same instance instead of deserializing it again. The consumers must then not modify the payloads.
+         */
+        public EventStoreBuilder<T> tailBufferCachesPayloads(boolean tailBufferCachesPayloads) {
+            this.eventStore.tailBufferCachesPayloads = tailBufferCachesPayloads;
+            return this;
+        }
+
+        /**
+         * Compress the log files of sealed segments in the background. Reads decompress only the blocks they need.
+         *
+         * @param compressionCodec Codec of the blocks, registered in CompressionCodecs.
+         */
+        public EventStoreBuilder<T> compressionCodec(CompressionCodec compressionCodec) {
+            CompressionCodecs.register(compressionCodec);
+            this.eventStore.compressionCodec = compressionCodec;
+            return this;
+        }
+
+        public EventStoreBuilder<T> compressionBlockSizeInBytes(int compressionBlockSizeInBytes) {
+            this.eventStore.compressionBlockSizeInBytes = compressionBlockSizeInBytes;
+            return this;
+        }
+
+        /**
+         * Maximum number of bytes of decompressed blocks kept in memory.
+         */
+        public EventStoreBuilder<T> compressedBlockCacheSizeInBytes(long compressedBlockCacheSizeInBytes) {
+            this.eventStore.compressedBlockCacheSizeInBytes = compressedBlockCacheSizeInBytes;
+            return this;
+        }
+
+        public EventStoreBuilder<T> compactionTimeIntervalInMs(long compactionTimeIntervalInMs) {
+            this.eventStore.compactionTimeIntervalInMs = compactionTimeIntervalInMs;
+            return this;
+        }
+
+        /**
+         * Copy the files of the store to dataDirPath/name under replicaDataDirPath, typically on a second disk.
+         */
+        public EventStoreBuilder<T> replicaDataDirPath(String replicaDataDirPath) {
+            this.eventStore.replicaDataDirPath = replicaDataDirPath;
+            return this;
+        }
+
+        /**
+         * Copy the files of the store to any follower. Cannot be used for a partitioned store, whose partitions
+         * each need their own follower.
+         */
+        public EventStoreBuilder<T> replicationTarget(ReplicationTarget replicationTarget) {
+            this.eventStore.replicationTarget = replicationTarget;
+            return this;
+        }
+
+        public EventStoreBuilder<T> replicationMode(ReplicationMode replicationMode) {
+            this.eventStore.replicationMode = replicationMode;
+            return this;
+        }
+
+        /**
+         * Longest time the replicator waits for a write before it looks for compressed and deleted segments,
+         * also the interval at which trackers are copied.
+         */
+        public EventStoreBuilder<T> replicationTimeIntervalInMs(long replicationTimeIntervalInMs) {
+            this.eventStore.replicationTimeIntervalInMs = replicationTimeIntervalInMs;
+            return this;
+        }
+
+        /**
+         * Longest time a write waits for the follower in SYNC mode before it fails with an IOException. Writes that
+         * time out are on disk locally, and reach the follower once it catches up.
+         */
+        public EventStoreBuilder<T> replicationTimeoutInMs(long replicationTimeoutInMs) {
+            this.eventStore.replicationTimeoutInMs = replicationTimeoutInMs;
+            return this;
+        }
+
+        /**
+         * Let producers hand their events to a single writer thread through a lock-free ring buffer instead of
+         * appending them themselves.
+         */
+        public EventStoreBuilder<T> ingestionMode(IngestionMode ingestionMode) {
+            this.eventStore.ingestionMode = ingestionMode;
+            return this;
+        }
+
+        /**
+         * Number of slots of the ingestion ring buffer, rounded up to a power of two. Producers wait when it is full.
+         */
+        public EventStoreBuilder<T> ringBufferSize(int ringBufferSize) {
+            this.eventStore.ringBufferSize = ringBufferSize;
+            return this;
+        }
+
         public EventStoreBuilder<T> fileSegmentCacheSize(int cacheSize) {
             this.eventStore.segmentCacheSize = cacheSize;
             return this;
         }
 
+        /**
+         * Maximum number of bytes of index files kept mapped by the cached segments.
+         * Segments evicted from the cache release their mappings and file channels. The limit is advisory: a released
+         * mapping is only unmapped once it is garbage collected, as readers may still hold it, and the active segment
+         * is never released, so the memory mapped at a time can go above it.
+         */
+        public EventStoreBuilder<T> segmentCacheMaxMappedBytes(long segmentCacheMaxMappedBytes) {
+            this.eventStore.segmentCacheMaxMappedBytes = segmentCacheMaxMappedBytes;
+            return this;
+        }
+
         public EventStore<T> build() throws IOException {
             this.eventStore.init();
             return this.eventStore;
         }
+
+        /**
+         * Build a store made of numberOfPartitions independent stores, each with its own segments, tracker and
+         * processor thread, configured like this builder. The partitions live under dataDirPath/name.
+         * The number of partitions of an existing store cannot be changed, as it decides the partition of a key.
+         */
+        public PartitionedEventStore<T> buildPartitioned(int numberOfPartitions) throws IOException {
+            if (numberOfPartitions <= 0) {
+                throw new IllegalArgumentException(String.format("Number of partitions must be positive, got %d.", numberOfPartitions));
+            }
+            if (this.eventStore.replicationTarget != null) {
+                throw new IllegalArgumentException("A replication target cannot be shared by partitions, use a replica data dir instead.");
+            }
+
+            Path partitionsDirPath = Paths.get(this.eventStore.dataDirPath, this.eventStore.name);
+            Files.createDirectories(partitionsDirPath);
+            long existingPartitions;
+            try (Stream<Path> paths = Files.list(partitionsDirPath)) {
+                existingPartitions = paths.filter(path -> path.getFileName().toString().startsWith(PartitionedEventStore.PARTITION)).count();
+            }
+            if (existingPartitions > 0 && existingPartitions != numberOfPartitions) {
+                throw new IllegalArgumentException(String.format("%s already has %d partitions, cannot open it with %d.",
+                        this.eventStore.name, existingPartitions, numberOfPartitions));
+            }
+
+            List<EventStore<T>> partitions = new ArrayList<>(numberOfPartitions);
+            for (int i = 0; i < numberOfPartitions; i++) {
+                EventStore<T> partition = this.eventStore.copyConfiguration(partitionsDirPath.toString(), PartitionedEventStore.getPartitionName(i));
+                partition.init();
+                partitions.add(partition);
+            }
+
+            return new PartitionedEventStore<>(this.eventStore.name, partitions);
+        }
     }
 }
@@ -0,0 +1,133 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forces the writes of many producers to disk with a single fsync.
+ * Writes are queued once they are appended to the active segment. A batch is forced as soon as it holds
+ * maxBatchSize writes, or maxLingerTimeInMs after its first write, whichever comes first.
+ * When the committer is stopped, the writes still queued are forced one last time, and writes queued afterwards fail.
+ */
+@Slf4j
+public class GroupCommitter extends Thread {
+
+    private final EventStore<?> eventStore;
+    private final int maxBatchSize;
+    private final long maxLingerTimeInNs;
+    private final BlockingQueue<PendingCommit> pendingCommits;
+    private volatile boolean stopped;
+
+    public GroupCommitter(EventStore<?> eventStore, int maxBatchSize, long maxLingerTimeInMs) {
+        this.eventStore = eventStore;
+        this.maxBatchSize = maxBatchSize;
+        this.maxLingerTimeInNs = TimeUnit.MILLISECONDS.toNanos(maxLingerTimeInMs);
+        this.pendingCommits = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Queue an appended write.
+     *
+     * @param offset The offset assigned to the write.
+     * @return Future completed with the offset once the write is on disk.
+     */
+    public CompletableFuture<Long> commit(long offset) {
+        PendingCommit pendingCommit = new PendingCommit(offset);
+        this.pendingCommits.add(pendingCommit);
+        // Checked after queueing, so the write is either in the last batch of the committer or failed here.
+        if (this.stopped) {
+            this.failPendingCommits();
+        }
+        return pendingCommit.future;
+    }
+
+    @Override
+    public void run() {
+        List<PendingCommit> batch = new ArrayList<>(this.maxBatchSize);
+
+        while (true) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Group committer thread is interrupted. Shutting down!");
+                break;
+            }
+
+            try {
+                this.collectBatch(batch);
+            } catch (InterruptedException e) {
+                log.info("Group committer thread is interrupted.");
+                Thread.currentThread().interrupt();
+            }
+
+            if (!batch.isEmpty()) {
+                this.forceBatch(batch);
+                batch.clear();
+            }
+        }
+
+        this.stopped = true;
+        this.pendingCommits.drainTo(batch);
+        if (!batch.isEmpty()) {
+            this.forceBatch(batch);
+        }
+    }
+
+    private void collectBatch(List<PendingCommit> batch) throws InterruptedException {
+        batch.add(this.pendingCommits.take());
+        long deadline = System.nanoTime() + this.maxLingerTimeInNs;
+
+        while (batch.size() < this.maxBatchSize) {
+            this.pendingCommits.drainTo(batch, this.maxBatchSize - batch.size());
+            long remaining = deadline - System.nanoTime();
+            if (batch.size() == this.maxBatchSize || remaining <= 0) {
+                break;
+            }
+
+            PendingCommit pendingCommit = this.pendingCommits.poll(remaining, TimeUnit.NANOSECONDS);
+            if (pendingCommit == null) {
+                break;
+            }
+            batch.add(pendingCommit);
+        }
+    }
+
+    private void forceBatch(List<PendingCommit> batch) {
+        try {
+            log.debug("Forcing a batch of {} writes to disk.", batch.size());
+            this.eventStore.force();
+            for (PendingCommit pendingCommit : batch) {
+                pendingCommit.future.complete(pendingCommit.offset);
+            }
+        } catch (IOException e) {
+            log.error("Failed to force a batch of {} writes to disk. Exception is {}.", batch.size(), e);
+            for (PendingCommit pendingCommit : batch) {
+                pendingCommit.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void failPendingCommits() {
+        IOException e = new IOException("The group committer is stopped.");
+        PendingCommit pendingCommit;
+        while ((pendingCommit = this.pendingCommits.poll()) != null) {
+            pendingCommit.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingCommit {
+        private final long offset;
+        private final CompletableFuture<Long> future;
+
+        private PendingCommit(long offset) {
+            this.offset = offset;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
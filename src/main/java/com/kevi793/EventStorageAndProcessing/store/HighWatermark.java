@@ -0,0 +1,153 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Number of events written to a store, published by the writer so that readers can wait for new events
+ * instead of polling the store.
+ * A waiting reader first spins for spinCount checks, then parks until the writer moves the watermark past
+ * the event it waits for. The writer only unparks when someone is waiting, so publishing is a volatile
+ * write in the common case. Readers can also be woken up without a write, when what they wait for changed.
+ * Readers that must not hold a thread while they wait register a listener instead, run by the next write.
+ */
+@Slf4j
+public class HighWatermark {
+
+    private final int spinCount;
+    private final Set<Thread> waiters = ConcurrentHashMap.newKeySet();
+    private final Queue<Runnable> listeners = new ConcurrentLinkedQueue<>();
+    private final AtomicLong wakeUpCount = new AtomicLong();
+    private volatile long numberOfEventsWritten;
+
+    public HighWatermark(long numberOfEventsWritten, int spinCount) {
+        this.numberOfEventsWritten = numberOfEventsWritten;
+        this.spinCount = spinCount;
+    }
+
+    public long get() {
+        return this.numberOfEventsWritten;
+    }
+
+    /**
+     * Publish the number of events written so far and wake up the readers waiting for them.
+     */
+    public void advanceTo(long numberOfEventsWritten) {
+        this.numberOfEventsWritten = numberOfEventsWritten;
+        this.unparkWaiters();
+        this.runListeners();
+    }
+
+    /**
+     * Run a listener once, when the event is written. The listener runs on the thread of the writer, or right away
+     * if the event is already written, so it must only hand the work over to another thread.
+     */
+    public void onEventWritten(long eventNumber, Runnable listener) {
+        this.listeners.add(listener);
+        // Registering before checking makes sure a write published in between runs the listener.
+        if (this.numberOfEventsWritten > eventNumber) {
+            this.runListeners();
+        }
+    }
+
+    /**
+     * Number of times the readers were woken up without a write.
+     */
+    public long getWakeUpCount() {
+        return this.wakeUpCount.get();
+    }
+
+    /**
+     * Wake up the waiting readers without a write, so they can look at what they wait for again.
+     */
+    public void wakeUp() {
+        this.wakeUpCount.incrementAndGet();
+        this.unparkWaiters();
+    }
+
+    /**
+     * Wait until the event is written.
+     *
+     * @param eventNumber The event to wait for.
+     * @param timeout     Maximum time to wait, Long.MAX_VALUE to wait until the event is written.
+     * @param unit        Unit of the timeout.
+     * @return True if the event is written, false if the timeout elapsed first.
+     */
+    public boolean await(long eventNumber, long timeout, TimeUnit unit) throws InterruptedException {
+        return this.await(eventNumber, this.wakeUpCount.get(), timeout, unit);
+    }
+
+    /**
+     * Wait until the event is written, or until the readers are woken up.
+     *
+     * @param wakeUpCount The wake up count read before the reader decided to wait, so a wake up in between is not missed.
+     * @return True if the event is written, false if the timeout elapsed or the readers were woken up first.
+     */
+    public boolean await(long eventNumber, long wakeUpCount, long timeout, TimeUnit unit) throws InterruptedException {
+        for (int i = 0; i <= this.spinCount; i++) {
+            if (this.numberOfEventsWritten > eventNumber) {
+                return true;
+            }
+        }
+
+        Thread currentThread = Thread.currentThread();
+        boolean timed = timeout != Long.MAX_VALUE;
+        long deadline = timed ? System.nanoTime() + unit.toNanos(timeout) : 0;
+
+        // Registering before checking again makes sure a write published in between unparks this thread.
+        this.waiters.add(currentThread);
+        try {
+            while (this.numberOfEventsWritten <= eventNumber) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (this.wakeUpCount.get() != wakeUpCount) {
+                    return false;
+                }
+
+                if (timed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            this.waiters.remove(currentThread);
+        }
+
+        return true;
+    }
+
+    /**
+     * Run the registered listeners. A listener waiting for a later event runs as well and registers again.
+     */
+    private void runListeners() {
+        Runnable listener;
+        while ((listener = this.listeners.poll()) != null) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                log.error("Listener of the high watermark failed. Exception is {}.", e);
+            }
+        }
+    }
+
+    private void unparkWaiters() {
+        if (!this.waiters.isEmpty()) {
+            for (Thread waiter : this.waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+/**
+ * How the writes of producers reach the active segment.
+ */
+public enum IngestionMode {
+
+    /**
+     * Every producer appends its event itself, holding the lock of the store while doing so.
+     */
+    DIRECT,
+
+    /**
+     * Producers serialize their events and put them in a ring buffer without taking a lock, a single writer thread
+     * appends them in batches. A write that does not wait for a commit returns before its event is appended.
+     */
+    RING_BUFFER
+}
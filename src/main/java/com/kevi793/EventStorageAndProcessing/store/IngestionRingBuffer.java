@@ -0,0 +1,264 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring of serialized payloads written by many producers and appended to a store by a single writer.
+ * A producer claims slots by moving the claim sequence with a CAS, fills them without holding a lock and publishes
+ * every slot by storing its sequence. The writer takes the published slots in sequence order, so events are appended
+ * in the order their slots were claimed. A slot is reused once the writer has appended it, so producers wait while
+ * they are capacity slots ahead of the writer, parking for longer and longer up to MAX_BACKOFF_IN_NANOS.
+ * Once the ring is closed no slot can be claimed, and the writer appends the slots claimed before. While the ring is
+ * paused producers wait to claim slots, so the thread that paused it appends to the store alone.
+ */
+@Slf4j
+public class IngestionRingBuffer {
+
+    // Set in the claim sequence when the ring is closed, so a claim racing with the close fails its CAS.
+    private static final long CLOSED = Long.MIN_VALUE;
+    // Set in the claim sequence while the ring is paused, so no slot is claimed until it is resumed.
+    private static final long PAUSED = 1L << 62;
+    private static final long FLAGS = CLOSED | PAUSED;
+    private static final long MIN_BACKOFF_IN_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_BACKOFF_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private final byte[][] payloads;
+    private final CompletableFuture<Long>[] appends;
+    private final AtomicLongArray publishedSequences;
+    private final AtomicLong claimSequence = new AtomicLong();
+    private volatile long appendedSequence;
+    private volatile Thread waitingWriter;
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of two.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public IngestionRingBuffer(int capacity) {
+        this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.payloads = new byte[this.capacity][];
+        this.appends = new CompletableFuture[this.capacity];
+        this.publishedSequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            this.publishedSequences.set(i, -1);
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Put a payload in the ring, waiting for a free slot if the ring is full.
+     *
+     * @param append Future completed with the offset of the event once it is appended, null if nobody waits for it.
+     * @throws IOException If the ring is closed, InterruptedIOException if interrupted while waiting for a slot.
+     */
+    public void publish(byte[] serializedPayload, CompletableFuture<Long> append) throws IOException {
+        this.set(this.claim(1), serializedPayload, append);
+    }
+
+    /**
+     * Put payloads in consecutive slots, so they get consecutive offsets. The payloads must fit in the ring.
+     *
+     * @param appendOfLast Future completed with the offset of the last event once the payloads are appended.
+     */
+    public void publishAll(List<byte[]> serializedPayloads, CompletableFuture<Long> appendOfLast) throws IOException {
+        if (serializedPayloads.size() > this.capacity) {
+            throw new IllegalArgumentException(String.format("A batch of %d payloads does not fit in a ring of %d slots.",
+                    serializedPayloads.size(), this.capacity));
+        }
+
+        long firstSequence = this.claim(serializedPayloads.size());
+        for (int i = 0; i < serializedPayloads.size(); i++) {
+            this.set(firstSequence + i, serializedPayloads.get(i), i == serializedPayloads.size() - 1 ? appendOfLast : null);
+        }
+    }
+
+    /**
+     * Take the published slots that follow the last appended one, in sequence order. Called by the writer only.
+     *
+     * @return Number of slots taken, to be given to {@link #release(int)} once they are appended.
+     */
+    public int take(List<byte[]> serializedPayloads, List<CompletableFuture<Long>> appends, int maxBatchSize) {
+        long nextSequence = this.appendedSequence;
+        int taken = 0;
+        while (taken < maxBatchSize && this.publishedSequences.get(this.indexOf(nextSequence + taken)) == nextSequence + taken) {
+            int index = this.indexOf(nextSequence + taken);
+            serializedPayloads.add(this.payloads[index]);
+            appends.add(this.appends[index]);
+            taken++;
+        }
+
+        return taken;
+    }
+
+    /**
+     * Free the slots taken once they are appended. Called by the writer only.
+     */
+    public void release(int taken) {
+        long nextSequence = this.appendedSequence;
+        for (int i = 0; i < taken; i++) {
+            int index = this.indexOf(nextSequence + i);
+            this.payloads[index] = null;
+            this.appends[index] = null;
+        }
+        this.appendedSequence = nextSequence + taken;
+    }
+
+    /**
+     * Park the writer until a slot is published or the timeout elapses. Called by the writer only.
+     */
+    public void awaitPublished(long timeout, TimeUnit unit) {
+        // Registering before checking again makes sure a slot published in between unparks the writer.
+        this.waitingWriter = Thread.currentThread();
+        if (this.publishedSequences.get(this.indexOf(this.appendedSequence)) != this.appendedSequence) {
+            LockSupport.parkNanos(this, unit.toNanos(timeout));
+        }
+        this.waitingWriter = null;
+    }
+
+    /**
+     * Wait until every slot claimed so far is appended.
+     *
+     * @throws InterruptedIOException If interrupted while waiting.
+     */
+    public void awaitAppended() throws InterruptedIOException {
+        long claimedSequence = this.claimSequence.get() & ~FLAGS;
+        long backoffInNanos = MIN_BACKOFF_IN_NANOS;
+        while (this.appendedSequence < claimedSequence) {
+            backoffInNanos = this.backOff(backoffInNanos, "Interrupted while waiting for the ingestion ring buffer to be appended.");
+        }
+    }
+
+    /**
+     * Stop producers from claiming slots and wait until every slot claimed before is appended, so the caller appends
+     * to the store alone until {@link #resume()}. Only one thread pauses the ring at a time, the others wait.
+     *
+     * @throws IOException If the ring is closed, InterruptedIOException if interrupted while waiting.
+     */
+    public void pause() throws IOException {
+        long backoffInNanos = MIN_BACKOFF_IN_NANOS;
+        while (true) {
+            long current = this.claimSequence.get();
+            if ((current & CLOSED) != 0) {
+                throw new IOException("The ingestion ring buffer is closed.");
+            }
+
+            if ((current & PAUSED) != 0) {
+                backoffInNanos = this.backOff(backoffInNanos, "Interrupted while waiting for the ingestion ring buffer to be resumed.");
+                continue;
+            }
+
+            if (this.claimSequence.compareAndSet(current, current | PAUSED)) {
+                break;
+            }
+        }
+
+        try {
+            this.awaitAppended();
+        } catch (InterruptedIOException e) {
+            this.resume();
+            throw e;
+        }
+    }
+
+    /**
+     * Let producers claim slots again after {@link #pause()}.
+     */
+    public void resume() {
+        while (true) {
+            long current = this.claimSequence.get();
+            if (this.claimSequence.compareAndSet(current, current & ~PAUSED)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stop producers from claiming slots. The slots claimed so far are still published and appended.
+     */
+    public void close() {
+        while (true) {
+            long current = this.claimSequence.get();
+            if ((current & CLOSED) != 0 || this.claimSequence.compareAndSet(current, current | CLOSED)) {
+                break;
+            }
+        }
+
+        Thread writer = this.waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+        log.debug("Closed the ingestion ring buffer at sequence {}.", this.claimSequence.get() & ~FLAGS);
+    }
+
+    /**
+     * Whether the ring is closed and every slot claimed before is appended. Called by the writer only.
+     */
+    public boolean isClosedAndDrained() {
+        long current = this.claimSequence.get();
+        return (current & CLOSED) != 0 && this.appendedSequence == (current & ~FLAGS);
+    }
+
+    private long claim(int numberOfSlots) throws IOException {
+        long backoffInNanos = MIN_BACKOFF_IN_NANOS;
+        while (true) {
+            long current = this.claimSequence.get();
+            if ((current & CLOSED) != 0) {
+                throw new IOException("The ingestion ring buffer is closed.");
+            }
+
+            long next = current + numberOfSlots;
+            if ((current & PAUSED) != 0 || next - this.capacity > this.appendedSequence) {
+                // The ring is paused or full, wait.
+                backoffInNanos = this.backOff(backoffInNanos, "Interrupted while waiting for a slot of the ingestion ring buffer.");
+                continue;
+            }
+
+            if (this.claimSequence.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    private void set(long sequence, byte[] serializedPayload, CompletableFuture<Long> append) {
+        int index = this.indexOf(sequence);
+        this.payloads[index] = serializedPayload;
+        this.appends[index] = append;
+        // The volatile write publishes the slot contents to the writer.
+        this.publishedSequences.set(index, sequence);
+
+        Thread writer = this.waitingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Park for the given time, and return the time to park for next.
+     */
+    private long backOff(long backoffInNanos, String interruptedMessage) throws InterruptedIOException {
+        LockSupport.parkNanos(this, backoffInNanos);
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException(interruptedMessage);
+        }
+
+        return Math.min(backoffInNanos * 2, MAX_BACKOFF_IN_NANOS);
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence & this.mask);
+    }
+}
@@ -0,0 +1,88 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import com.kevi793.EventStorageAndProcessing.exception.PartialAppendException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends the payloads of the ingestion ring buffer to the store, as many as are published at once in one batch.
+ * Producers that do not wait for their write only learn about a failed append from the log. When an append fails
+ * part way, the events appended before the failure keep their offsets and only the others fail.
+ * waitTimeInMs is the longest time the writer parks before looking at the ring again.
+ * The writer stops once the ring is closed and every slot claimed before is appended.
+ */
+@Slf4j
+public class IngestionWriter extends Thread {
+
+    private final EventStore<?> eventStore;
+    private final IngestionRingBuffer ringBuffer;
+    private final long waitTimeInMs;
+
+    public IngestionWriter(EventStore<?> eventStore, IngestionRingBuffer ringBuffer, long waitTimeInMs) {
+        this.eventStore = eventStore;
+        this.ringBuffer = ringBuffer;
+        this.waitTimeInMs = waitTimeInMs;
+    }
+
+    @Override
+    public void run() {
+        List<byte[]> batch = new ArrayList<>(this.ringBuffer.getCapacity());
+        List<CompletableFuture<Long>> appends = new ArrayList<>(this.ringBuffer.getCapacity());
+
+        while (true) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Ingestion writer thread is interrupted. Shutting down!");
+                break;
+            }
+
+            int taken = this.ringBuffer.take(batch, appends, this.ringBuffer.getCapacity());
+            if (taken == 0) {
+                if (this.ringBuffer.isClosedAndDrained()) {
+                    log.debug("Ingestion ring buffer is closed and drained. Shutting down!");
+                    break;
+                }
+                this.ringBuffer.awaitPublished(this.waitTimeInMs, TimeUnit.MILLISECONDS);
+                continue;
+            }
+
+            try {
+                OffsetRange offsetRange = this.eventStore.appendAll(batch);
+                this.completeAppends(appends, taken, offsetRange.getFirstOffset(), null);
+            } catch (PartialAppendException e) {
+                OffsetRange appended = e.getAppendedOffsetRange();
+                log.error("Failed to append {} of a batch of {} events. Exception is {}.", taken - appended.getNumberOfOffsets(), taken, e);
+                this.completeAppends(appends, (int) appended.getNumberOfOffsets(), appended.getFirstOffset(), e);
+            } catch (Exception e) {
+                log.error("Failed to append a batch of {} events. Exception is {}.", taken, e);
+                this.completeAppends(appends, 0, -1, e);
+            } finally {
+                this.ringBuffer.release(taken);
+                batch.clear();
+                appends.clear();
+            }
+        }
+    }
+
+    /**
+     * Complete the futures of the first appended events with their offsets, and fail the others with the failure.
+     */
+    private void completeAppends(List<CompletableFuture<Long>> appends, int appended, long firstOffset, Exception failure) {
+        for (int i = 0; i < appends.size(); i++) {
+            CompletableFuture<Long> append = appends.get(i);
+            if (append == null) {
+                continue;
+            }
+
+            if (i < appended) {
+                append.complete(firstOffset + i);
+            } else {
+                append.completeExceptionally(failure);
+            }
+        }
+    }
+}
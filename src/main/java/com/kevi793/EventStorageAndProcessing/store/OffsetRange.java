@@ -0,0 +1,27 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import lombok.Getter;
+
+/**
+ * A contiguous range of offsets, both ends inclusive. The range is empty when lastOffset is before firstOffset.
+ */
+@Getter
+public class OffsetRange {
+
+    private final long firstOffset;
+    private final long lastOffset;
+
+    public OffsetRange(long firstOffset, long lastOffset) {
+        this.firstOffset = firstOffset;
+        this.lastOffset = lastOffset;
+    }
+
+    public long getNumberOfOffsets() {
+        return Math.max(0, this.lastOffset - this.firstOffset + 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%d, %d]", this.firstOffset, this.lastOffset);
+    }
+}
@@ -0,0 +1,119 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A store split into partitions by key.
+ * Every partition is an {@link EventStore} with its own segments, tracker and processor thread, so the events
+ * of different partitions are processed in parallel. Events with the same key go to the same partition and are
+ * processed in the order they were written; there is no ordering across keys.
+ * A key must hash to the same partition in every JVM that opens the store, so keys are limited to strings, integral
+ * and boolean boxed primitives, characters, UUIDs, enums and byte arrays.
+ * The consumer is called from the processor threads of all the partitions, so it must be thread safe.
+ */
+@Slf4j
+public class PartitionedEventStore<T> implements Closeable {
+    static final String PARTITION = "partition";
+    private static final String DELIMITER = "-";
+
+    private final String name;
+    private final List<EventStore<T>> partitions;
+
+    PartitionedEventStore(String name, List<EventStore<T>> partitions) {
+        this.name = name;
+        this.partitions = partitions;
+        log.debug("Created {} with {} partitions.", name, partitions.size());
+    }
+
+    static String getPartitionName(int partition) {
+        return PARTITION + DELIMITER + partition;
+    }
+
+    public void write(Object key, Object payload) throws IOException {
+        this.getPartitionFor(key).write(payload);
+    }
+
+    public CompletableFuture<Long> writeAsync(Object key, Object payload) {
+        return this.getPartitionFor(key).writeAsync(payload);
+    }
+
+    public Mono<Long> writeReactive(Object key, Object payload) {
+        return this.getPartitionFor(key).writeReactive(payload);
+    }
+
+    public int getPartition(Object key) {
+        return Math.floorMod(hash(key), this.partitions.size());
+    }
+
+    /**
+     * Hash of a key that does not change across JVMs. The hash codes of strings, boxed primitives and UUIDs are
+     * specified, so keys written before keep their partition. An enum is hashed by its name, since its own hash code
+     * is its identity.
+     */
+    private static int hash(Object key) {
+        if (key instanceof String || key instanceof Long || key instanceof Integer || key instanceof Short
+                || key instanceof Byte || key instanceof Character || key instanceof Boolean || key instanceof UUID) {
+            return key.hashCode();
+        }
+        if (key instanceof Enum) {
+            return ((Enum<?>) key).name().hashCode();
+        }
+        if (key instanceof byte[]) {
+            return Arrays.hashCode((byte[]) key);
+        }
+
+        throw new IllegalArgumentException(String.format("Unsupported partition key %s of %s, its hash code may differ across JVMs.",
+                key, key == null ? null : key.getClass().getName()));
+    }
+
+    public EventStore<T> getPartitionFor(Object key) {
+        return this.partitions.get(this.getPartition(key));
+    }
+
+    public List<EventStore<T>> getPartitions() {
+        return Collections.unmodifiableList(this.partitions);
+    }
+
+    public int getNumberOfPartitions() {
+        return this.partitions.size();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Close every partition, even if closing one of them fails.
+     *
+     * @see EventStore#close()
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (EventStore<T> partition : this.partitions) {
+            try {
+                partition.close();
+            } catch (IOException e) {
+                log.error("Failed to close a partition of {}. Exception is {}.", this.name, e);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -4,30 +4,203 @@ import com.kevi793.EventStorageAndProcessing.store.segment.BaseSegmentFile;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
 
+/**
+ * Tracks how many events have been processed so far.
+ * The number is kept in memory and persisted every checkpointIntervalInEvents events or checkpointIntervalInMs,
+ * whichever comes first. It is persisted to a memory-mapped file with two checksummed slots which are written
+ * alternately, so a crash while persisting leaves the previous checkpoint intact.
+ * The position can be reset from outside the processor; the processor picks it up with {@link #pollReset()}.
+ */
 @Slf4j
 public class ProcessedEventsTracker extends BaseSegmentFile {
 
+    public static final int DEFAULT_CHECKPOINT_INTERVAL_IN_EVENTS = 1000;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_IN_MS = 1000;
+
+    private static final int SLOT_SIZE_IN_BYTES = Long.BYTES + Long.BYTES + Long.BYTES;
+    private static final int NUMBER_OF_SLOTS = 2;
+    private static final int FILE_SIZE_IN_BYTES = SLOT_SIZE_IN_BYTES * NUMBER_OF_SLOTS;
+    private static final int SEQUENCE_FIELD_OFFSET = Long.BYTES;
+    private static final int CHECKSUM_FIELD_OFFSET = Long.BYTES + Long.BYTES;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private final int checkpointIntervalInEvents;
+    private final long checkpointIntervalInNs;
+    private final MappedByteBuffer checkpointFile;
+
+    private volatile long numberOfEventsProcessedSoFar;
+    private long persistedNumberOfEventsProcessed;
+    private long lastPersistTime;
+    private long sequence;
+    private Long pendingReset;
+
     public ProcessedEventsTracker(Path processedEventsTrackerFilePath) throws IOException {
+        this(processedEventsTrackerFilePath, DEFAULT_CHECKPOINT_INTERVAL_IN_EVENTS, DEFAULT_CHECKPOINT_INTERVAL_IN_MS);
+    }
+
+    public ProcessedEventsTracker(Path processedEventsTrackerFilePath, int checkpointIntervalInEvents, long checkpointIntervalInMs) throws IOException {
         super(processedEventsTrackerFilePath);
+        this.checkpointIntervalInEvents = checkpointIntervalInEvents;
+        this.checkpointIntervalInNs = TimeUnit.MILLISECONDS.toNanos(checkpointIntervalInMs);
+
+        Long legacyNumberOfEventsProcessed = this.readLegacyFormat();
+        if (legacyNumberOfEventsProcessed != null) {
+            this.convertLegacyFormat(legacyNumberOfEventsProcessed);
+        }
+        try (FileChannel channel = FileChannel.open(this.filePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.checkpointFile = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE_IN_BYTES);
+        }
+
+        this.load();
+        this.persistedNumberOfEventsProcessed = this.numberOfEventsProcessedSoFar;
+        this.lastPersistTime = System.nanoTime();
+    }
+
+    /**
+     * Record the number of events processed so far. It is persisted if a checkpoint is due.
+     */
+    public synchronized void write(long numberOfEventsProcessedSoFar) {
+        if (this.pendingReset != null) {
+            log.debug("Ignoring numberOfEventsProcessedSoFar {} for {} as it is being reset.", numberOfEventsProcessedSoFar, this.filePath);
+            return;
+        }
+
+        this.numberOfEventsProcessedSoFar = numberOfEventsProcessedSoFar;
+
+        if (numberOfEventsProcessedSoFar - this.persistedNumberOfEventsProcessed >= this.checkpointIntervalInEvents
+                || System.nanoTime() - this.lastPersistTime >= this.checkpointIntervalInNs) {
+            this.persist();
+        }
+    }
+
+    /**
+     * Persist the number of events processed so far if it changed since the last checkpoint.
+     */
+    public synchronized void flush() {
+        if (this.numberOfEventsProcessedSoFar != this.persistedNumberOfEventsProcessed) {
+            this.persist();
+        }
+    }
+
+    /**
+     * Move the tracker to another event and persist it right away. Writes of the processor are ignored until it
+     * picks up the new position.
+     */
+    public synchronized void reset(long numberOfEventsProcessedSoFar) {
+        this.numberOfEventsProcessedSoFar = numberOfEventsProcessedSoFar;
+        this.pendingReset = numberOfEventsProcessedSoFar;
+        this.persist();
+        log.info("Reset {} to numberOfEventsProcessedSoFar {}.", this.filePath, numberOfEventsProcessedSoFar);
     }
 
-    public void write(long numberOfEventsProcessedSoFar) throws IOException {
-        log.debug("Trying to update {} with eventNumber {}.", this.filePath, numberOfEventsProcessedSoFar);
-        Files.write(this.filePath, String.valueOf(numberOfEventsProcessedSoFar).getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
-        log.debug("Successfully updated {} with numberOfEventsProessedSoFar {}.", this.filePath, numberOfEventsProcessedSoFar);
+    /**
+     * @return The position the tracker was reset to since the last call, null if it was not reset.
+     */
+    public synchronized Long pollReset() {
+        Long reset = this.pendingReset;
+        this.pendingReset = null;
+        return reset;
     }
 
-    public long getNumberOfEventsProcessedSoFar() throws IOException {
-        byte[] bytes = Files.readAllBytes(this.filePath);
-        if (bytes.length == 0) {
-            return 0L;
+    public long getNumberOfEventsProcessedSoFar() {
+        return this.numberOfEventsProcessedSoFar;
+    }
+
+    private void persist() {
+        long numberOfEventsProcessed = this.numberOfEventsProcessedSoFar;
+        this.sequence++;
+        int slot = (int) (this.sequence % NUMBER_OF_SLOTS) * SLOT_SIZE_IN_BYTES;
+
+        this.checkpointFile.putLong(slot, numberOfEventsProcessed);
+        this.checkpointFile.putLong(slot + SEQUENCE_FIELD_OFFSET, this.sequence);
+        this.checkpointFile.putLong(slot + CHECKSUM_FIELD_OFFSET, checksum(numberOfEventsProcessed, this.sequence));
+        this.checkpointFile.force();
+
+        this.persistedNumberOfEventsProcessed = numberOfEventsProcessed;
+        this.lastPersistTime = System.nanoTime();
+        log.debug("Successfully updated {} with numberOfEventsProcessedSoFar {}.", this.filePath, numberOfEventsProcessed);
+    }
+
+    /**
+     * Take the valid slot with the highest sequence.
+     */
+    private void load() {
+        for (int i = 0; i < NUMBER_OF_SLOTS; i++) {
+            int slot = i * SLOT_SIZE_IN_BYTES;
+            long numberOfEventsProcessed = this.checkpointFile.getLong(slot);
+            long slotSequence = this.checkpointFile.getLong(slot + SEQUENCE_FIELD_OFFSET);
+            long slotChecksum = this.checkpointFile.getLong(slot + CHECKSUM_FIELD_OFFSET);
+
+            if (slotSequence > this.sequence && slotChecksum == checksum(numberOfEventsProcessed, slotSequence)) {
+                this.sequence = slotSequence;
+                this.numberOfEventsProcessedSoFar = numberOfEventsProcessed;
+            }
+        }
+
+        log.debug("Loaded numberOfEventsProcessedSoFar {} from {}.", this.numberOfEventsProcessedSoFar, this.filePath);
+    }
+
+    /**
+     * The tracker used to be the number of events processed so far written as text.
+     *
+     * @return The number in a tracker of the old format, null if the tracker is not of the old format.
+     */
+    private Long readLegacyFormat() throws IOException {
+        long size = Files.size(this.filePath);
+        if (size == 0 || size == FILE_SIZE_IN_BYTES) {
+            return null;
         }
 
-        return Long.parseLong(new String(bytes));
+        String legacyValue = new String(Files.readAllBytes(this.filePath), StandardCharsets.UTF_8).trim();
+        return legacyValue.isEmpty() ? 0L : Long.parseLong(legacyValue);
+    }
+
+    /**
+     * Replace a tracker of the old format with one holding the same number in both slots. The slots are written to a
+     * temporary file which is moved in place once it is on disk, so a crash leaves either the old or the new tracker.
+     */
+    private void convertLegacyFormat(long numberOfEventsProcessed) throws IOException {
+        log.info("Converting legacy tracker {} with numberOfEventsProcessedSoFar {}.", this.filePath, numberOfEventsProcessed);
+        Path tempFilePath = Paths.get(this.filePath.toString() + TEMP_FILE_SUFFIX);
+        ByteBuffer slots = ByteBuffer.allocate(FILE_SIZE_IN_BYTES);
+        for (long slotSequence = 1; slotSequence <= NUMBER_OF_SLOTS; slotSequence++) {
+            int slot = (int) (slotSequence % NUMBER_OF_SLOTS) * SLOT_SIZE_IN_BYTES;
+            slots.putLong(slot, numberOfEventsProcessed);
+            slots.putLong(slot + SEQUENCE_FIELD_OFFSET, slotSequence);
+            slots.putLong(slot + CHECKSUM_FIELD_OFFSET, checksum(numberOfEventsProcessed, slotSequence));
+        }
+
+        try (FileChannel channel = FileChannel.open(tempFilePath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (slots.hasRemaining()) {
+                channel.write(slots);
+            }
+            channel.force(true);
+        }
+
+        Files.move(tempFilePath, this.filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long checksum(long numberOfEventsProcessed, long sequence) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (numberOfEventsProcessed >>> shift));
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (sequence >>> shift));
+        }
+        return crc.getValue();
     }
 
 }
@@ -0,0 +1,17 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+/**
+ * When a write to a replicated store completes.
+ */
+public enum ReplicationMode {
+
+    /**
+     * Complete the write without waiting for the follower, which lags behind by the replication lag.
+     */
+    ASYNC,
+
+    /**
+     * Complete the write once the follower has acknowledged it.
+     */
+    SYNC
+}
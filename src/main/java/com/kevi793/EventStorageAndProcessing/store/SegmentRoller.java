@@ -0,0 +1,132 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import com.kevi793.EventStorageAndProcessing.store.segment.Segment;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Seals full segments and creates the segments that follow them, off the path of the writes.
+ * A roll is requested by the write that fills the active segment, so the next write usually finds the next segment
+ * ready. When no roll comes for ageCheckIntervalInMs, the roller rolls the active segment if it is older than the max
+ * age, so an idle store rolls too. It takes the monitor of the store to do so, and a write waiting for a roll the
+ * roller has not started does it itself, so the two never wait for each other.
+ * Rolls still queued when the roller is stopped fail.
+ */
+@Slf4j
+public class SegmentRoller extends Thread {
+
+    private final EventStore<?> eventStore;
+    private final long ageCheckIntervalInMs;
+    private final BlockingQueue<PendingRoll> pendingRolls;
+    private volatile boolean stopped;
+
+    /**
+     * @param ageCheckIntervalInMs Time without a roll after which the age of the active segment is checked,
+     *                             Long.MAX_VALUE when segments have no max age.
+     */
+    public SegmentRoller(EventStore<?> eventStore, long ageCheckIntervalInMs) {
+        this.eventStore = eventStore;
+        this.ageCheckIntervalInMs = ageCheckIntervalInMs;
+        this.pendingRolls = new LinkedBlockingQueue<>();
+    }
+
+    /**
+     * Queue the roll of a full segment.
+     *
+     * @param fullSegment The segment to seal, nothing is written to it any more.
+     * @return Future completed with the segment that follows it.
+     */
+    public CompletableFuture<Segment> roll(Segment fullSegment) {
+        PendingRoll pendingRoll = new PendingRoll(fullSegment);
+        this.pendingRolls.add(pendingRoll);
+        if (this.stopped) {
+            this.failPendingRolls();
+        }
+        return pendingRoll.future;
+    }
+
+    /**
+     * Wait for a queued roll. A roll the roller has not started yet is done by the calling thread, as the roller may
+     * be waiting for the monitor of the store held by the caller.
+     *
+     * @return The segment that follows the full segment.
+     */
+    public Segment awaitRoll(CompletableFuture<Segment> roll) throws InterruptedException, ExecutionException {
+        for (PendingRoll pendingRoll : this.pendingRolls) {
+            if (pendingRoll.future == roll && this.pendingRolls.remove(pendingRoll)) {
+                log.debug("Rolling segment {} on the writing thread.", pendingRoll.fullSegment.getSegmentName());
+                this.execute(pendingRoll);
+                break;
+            }
+        }
+
+        return roll.get();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("Segment roller thread is interrupted. Shutting down!");
+                break;
+            }
+
+            PendingRoll pendingRoll;
+            try {
+                pendingRoll = this.pendingRolls.poll(this.ageCheckIntervalInMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                log.info("Segment roller thread is interrupted.");
+                Thread.currentThread().interrupt();
+                continue;
+            }
+
+            if (pendingRoll == null) {
+                try {
+                    this.eventStore.rollIdleSegmentIfDue();
+                } catch (IOException | RuntimeException e) {
+                    log.error("Failed to roll the idle active segment. Exception is {}.", e);
+                }
+                continue;
+            }
+
+            this.execute(pendingRoll);
+        }
+
+        this.stopped = true;
+        this.failPendingRolls();
+    }
+
+    private void execute(PendingRoll pendingRoll) {
+        try {
+            pendingRoll.future.complete(this.eventStore.sealAndCreateNextSegment(pendingRoll.fullSegment));
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to roll segment {}. Exception is {}.", pendingRoll.fullSegment.getSegmentName(), e);
+            pendingRoll.future.completeExceptionally(e);
+        }
+    }
+
+    private void failPendingRolls() {
+        IOException e = new IOException("The segment roller is stopped.");
+        PendingRoll pendingRoll;
+        while ((pendingRoll = this.pendingRolls.poll()) != null) {
+            pendingRoll.future.completeExceptionally(e);
+        }
+    }
+
+    private static class PendingRoll {
+        private final Segment fullSegment;
+        private final CompletableFuture<Segment> future;
+
+        private PendingRoll(Segment fullSegment) {
+            this.fullSegment = fullSegment;
+            this.future = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import com.kevi793.EventStorageAndProcessing.store.codec.Codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of the most recently written events of a store, so consumers that keep up with the writer read
+ * events from memory instead of the segment files.
+ * The event at an offset lives in slot offset % capacity until it is overwritten by the event capacity offsets later.
+ * Slots hold immutable entries, so a reader either sees the entry of the offset it asks for or knows it is gone.
+ * When payloads are cached, the payload deserialized by the first reader is handed to the later readers as well,
+ * which then must not modify it.
+ */
+public class TailBuffer<T> {
+
+    private final int capacity;
+    private final boolean cachePayloads;
+    private final Codec<T> codec;
+    private final AtomicReferenceArray<Entry<T>> entries;
+
+    public TailBuffer(int capacity, boolean cachePayloads, Codec<T> codec) {
+        this.capacity = capacity;
+        this.cachePayloads = cachePayloads;
+        this.codec = codec;
+        this.entries = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Add a written event. Called by the writer in offset order.
+     */
+    public void add(long offset, byte[] serializedPayload) {
+        this.entries.set(this.getSlot(offset), new Entry<>(offset, serializedPayload));
+    }
+
+    /**
+     * Read the payload of an event.
+     *
+     * @param offset The offset of the event.
+     * @return The payload, null if the event is not in the buffer.
+     */
+    public T get(long offset) throws IOException {
+        Entry<T> entry = this.entries.get(this.getSlot(offset));
+        if (entry == null || entry.offset != offset) {
+            return null;
+        }
+
+        if (!this.cachePayloads) {
+            return this.codec.decode(ByteBuffer.wrap(entry.serializedPayload));
+        }
+
+        T payload = entry.payload;
+        if (payload == null) {
+            payload = this.codec.decode(ByteBuffer.wrap(entry.serializedPayload));
+            entry.payload = payload;
+        }
+
+        return payload;
+    }
+
+    private int getSlot(long offset) {
+        return (int) (offset % this.capacity);
+    }
+
+    private static class Entry<T> {
+        private final long offset;
+        private final byte[] serializedPayload;
+        private volatile T payload;
+
+        private Entry(long offset, byte[] serializedPayload) {
+            this.offset = offset;
+            this.serializedPayload = serializedPayload;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.kevi793.EventStorageAndProcessing.store.codec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Turns the payloads of a store into the bytes stored in its records and back.
+ * A codec is shared by the writers and the consumers of a store, so it must be thread safe.
+ *
+ * @param <T> Type of the payloads.
+ */
+public interface Codec<T> {
+
+    /**
+     * @param payload The payload.
+     * @return The bytes to store. They are kept in the tail buffer of the store, so they must not be modified later.
+     */
+    byte[] encode(T payload) throws IOException;
+
+    /**
+     * @param bytes The stored bytes, from the position to the limit of the buffer. The buffer may be a view of a
+     *              record read from a segment, so it must not be modified or kept.
+     * @return The payload.
+     */
+    T decode(ByteBuffer bytes) throws IOException;
+
+    /**
+     * Whether the stored bytes are always UTF-8 text. Codecs of binary payloads need the BINARY record format.
+     */
+    default boolean isText() {
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package com.kevi793.EventStorageAndProcessing.store.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Stores payloads as JSON. The reader and the writer are resolved for the payload type once, so encoding and
+ * decoding go straight between the payload and bytes without looking up serializers or building a String.
+ * Payloads of another type than the one of the store, which write(Object) accepts, are written with the
+ * serializer of their own class.
+ */
+public class JacksonCodec<T> implements Codec<T> {
+
+    private final Class<T> clazz;
+    private final ObjectReader reader;
+    private final ObjectWriter writer;
+    private final ObjectWriter untypedWriter;
+
+    public JacksonCodec(Class<T> clazz) {
+        this(new ObjectMapper(), clazz);
+    }
+
+    /**
+     * @param objectMapper Mapper holding the configuration and modules to use, not modified.
+     */
+    public JacksonCodec(ObjectMapper objectMapper, Class<T> clazz) {
+        this.clazz = clazz;
+        this.reader = objectMapper.readerFor(clazz);
+        this.writer = objectMapper.writerFor(clazz);
+        this.untypedWriter = objectMapper.writer();
+    }
+
+    @Override
+    public byte[] encode(T payload) throws IOException {
+        if (payload != null && !this.clazz.isInstance(payload)) {
+            return this.untypedWriter.writeValueAsBytes(payload);
+        }
+
+        return this.writer.writeValueAsBytes(payload);
+    }
+
+    @Override
+    public T decode(ByteBuffer bytes) throws IOException {
+        if (bytes.hasArray()) {
+            return this.reader.readValue(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        }
+
+        return this.reader.readValue(new ByteBufferBackedInputStream(bytes.duplicate()));
+    }
+}
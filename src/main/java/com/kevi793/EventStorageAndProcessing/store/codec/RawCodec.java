@@ -0,0 +1,27 @@
+package com.kevi793.EventStorageAndProcessing.store.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores payloads that are already serialized, for instance protobuf or Avro bytes, as they are.
+ * Written arrays are not copied, so producers must not modify them after the write.
+ */
+public class RawCodec implements Codec<byte[]> {
+
+    @Override
+    public byte[] encode(byte[] payload) {
+        return payload;
+    }
+
+    @Override
+    public byte[] decode(ByteBuffer bytes) {
+        byte[] payload = new byte[bytes.remaining()];
+        bytes.duplicate().get(payload);
+        return payload;
+    }
+
+    @Override
+    public boolean isText() {
+        return false;
+    }
+}
@@ -4,29 +4,183 @@ import com.kevi793.EventStorageAndProcessing.Util;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.List;
 
+/**
+ * A file belonging to a segment.
+ * Appends go through a single {@link FileChannel} which is opened on the first append and kept open
+ * until the file is closed. Appended bytes are staged in a reusable direct buffer and written to the
+ * channel when the buffer is full, on {@link #flush()} or on {@link #close()}.
+ */
 @Slf4j
 public abstract class BaseSegmentFile {
 
+    public static final int DEFAULT_WRITE_BUFFER_SIZE_IN_BYTES = 8192;
+
     protected final Path filePath;
+    private final int writeBufferSizeInBytes;
+
+    private FileChannel writeChannel;
+    private ByteBuffer writeBuffer;
+    private long position;
 
     public BaseSegmentFile(Path filePath) throws IOException {
+        this(filePath, DEFAULT_WRITE_BUFFER_SIZE_IN_BYTES);
+    }
+
+    public BaseSegmentFile(Path filePath, int writeBufferSizeInBytes) throws IOException {
+        this(filePath, writeBufferSizeInBytes, true);
+    }
+
+    protected BaseSegmentFile(Path filePath, int writeBufferSizeInBytes, boolean createIfNotExists) throws IOException {
         this.filePath = filePath;
-        this.createSegmentFileIfNotExists();
+        this.writeBufferSizeInBytes = writeBufferSizeInBytes;
+        if (createIfNotExists) {
+            this.createSegmentFileIfNotExists();
+        }
     }
 
     public void append(String payload) throws IOException {
-        Files.write(this.filePath, Util.appendNewLine(payload).getBytes(), StandardOpenOption.APPEND);
+        this.append(Util.appendNewLine(payload).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public synchronized void append(byte[] bytes) throws IOException {
+        this.openWriteChannelIfNotOpen();
+
+        if (bytes.length > this.writeBuffer.remaining()) {
+            this.flush();
+        }
+
+        if (bytes.length > this.writeBuffer.capacity()) {
+            log.debug("Payload of {} bytes is larger than the write buffer of {}. Writing it directly.", bytes.length, this.filePath);
+            ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+            while (byteBuffer.hasRemaining()) {
+                this.writeChannel.write(byteBuffer);
+            }
+        } else {
+            this.writeBuffer.put(bytes);
+        }
+
+        this.position += bytes.length;
+    }
+
+    /**
+     * Append all the given byte arrays. If they do not fit in the write buffer, they are written together with
+     * whatever is staged in one gathered write.
+     */
+    public synchronized void appendAll(List<byte[]> byteArrays) throws IOException {
+        this.openWriteChannelIfNotOpen();
+
+        long totalLength = 0;
+        for (byte[] bytes : byteArrays) {
+            totalLength += bytes.length;
+        }
+
+        if (totalLength <= this.writeBuffer.remaining()) {
+            for (byte[] bytes : byteArrays) {
+                this.writeBuffer.put(bytes);
+            }
+        } else {
+            ByteBuffer[] byteBuffers = new ByteBuffer[byteArrays.size() + 1];
+            this.writeBuffer.flip();
+            byteBuffers[0] = this.writeBuffer;
+            for (int i = 0; i < byteArrays.size(); i++) {
+                byteBuffers[i + 1] = ByteBuffer.wrap(byteArrays.get(i));
+            }
+
+            long remaining = totalLength + this.writeBuffer.remaining();
+            while (remaining > 0) {
+                remaining -= this.writeChannel.write(byteBuffers);
+            }
+            this.writeBuffer.clear();
+            log.debug("Wrote {} byte arrays to {} in a gathered write.", byteArrays.size(), this.filePath);
+        }
+
+        this.position += totalLength;
+    }
+
+    /**
+     * Open the file for appending ahead of the first append.
+     */
+    public synchronized void openForAppend() throws IOException {
+        this.openWriteChannelIfNotOpen();
+    }
+
+    /**
+     * Write whatever is staged in the write buffer to the file.
+     */
+    public synchronized void flush() throws IOException {
+        if (this.writeBuffer == null || this.writeBuffer.position() == 0) {
+            return;
+        }
+
+        this.writeBuffer.flip();
+        while (this.writeBuffer.hasRemaining()) {
+            this.writeChannel.write(this.writeBuffer);
+        }
+        this.writeBuffer.clear();
+        log.debug("Flushed write buffer of {}.", this.filePath);
+    }
+
+    /**
+     * Flush the write buffer and force the written bytes to disk.
+     */
+    public synchronized void force() throws IOException {
+        if (this.writeChannel == null) {
+            return;
+        }
+
+        this.flush();
+        this.writeChannel.force(false);
+        log.debug("Forced {} to disk.", this.filePath);
+    }
+
+    /**
+     * Flush the write buffer if any byte before endPosition is still staged in it.
+     *
+     * @param endPosition The position up to which the file is about to be read.
+     */
+    public synchronized void flushIfNeeded(long endPosition) throws IOException {
+        if (this.writeBuffer != null && endPosition > this.position - this.writeBuffer.position()) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Size of the file including the bytes that are still staged in the write buffer.
+     */
+    public synchronized long getFileSize() throws IOException {
+        if (this.writeChannel == null) {
+            return Files.size(this.filePath);
+        }
+
+        return this.position;
     }
 
-    public long getFileSize() throws IOException {
-        return Files.size(this.filePath);
+    public synchronized void close() throws IOException {
+        if (this.writeChannel == null) {
+            return;
+        }
+
+        this.flush();
+        this.writeChannel.close();
+        this.writeChannel = null;
+        this.writeBuffer = null;
+        log.debug("Closed {}.", this.filePath);
+    }
+
+    public Path getFilePath() {
+        return this.filePath;
     }
 
     public void deleteFile() throws IOException {
+        this.close();
         if (Files.exists(this.filePath)) {
             log.debug("Trying to delete {}.", this.filePath);
             Files.delete(this.filePath);
@@ -34,6 +188,18 @@ public abstract class BaseSegmentFile {
         }
     }
 
+    private void openWriteChannelIfNotOpen() throws IOException {
+        if (this.writeChannel != null) {
+            return;
+        }
+
+        log.debug("Opening write channel for {}.", this.filePath);
+        this.writeChannel = FileChannel.open(this.filePath, StandardOpenOption.WRITE);
+        this.position = this.writeChannel.size();
+        this.writeChannel.position(this.position);
+        this.writeBuffer = ByteBuffer.allocateDirect(this.writeBufferSizeInBytes);
+    }
+
     private void createSegmentFileIfNotExists() throws IOException {
         log.debug("Trying to create segment file {}.", this.filePath);
         if (Files.exists(this.filePath)) {
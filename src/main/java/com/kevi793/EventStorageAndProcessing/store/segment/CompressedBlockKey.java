@@ -0,0 +1,21 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+import java.nio.file.Path;
+
+/**
+ * Key of a decompressed block in the block cache.
+ */
+@EqualsAndHashCode
+@ToString
+public class CompressedBlockKey {
+    private final Path filePath;
+    private final int blockNumber;
+
+    public CompressedBlockKey(Path filePath, int blockNumber) {
+        this.filePath = filePath;
+        this.blockNumber = blockNumber;
+    }
+}
@@ -0,0 +1,246 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import com.kevi793.EventStorageAndProcessing.cache.Cache;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.CompressionCodec;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.CompressionCodecs;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The log file of a sealed segment, compressed in blocks.
+ * The log is cut into blocks of blockSizeInBytes which are compressed independently, so reading a record only
+ * decompresses the blocks it spans. Positions are those of the uncompressed log, so the index of the segment
+ * is used as is. Decompressed blocks are kept in a cache shared by the segments of a store. Blocks are read through
+ * one channel, opened on the first read and again after the file is closed.
+ * <p>
+ * Layout: the compressed blocks, the start position of every block followed by the end of the last one,
+ * then a trailer with the block size, the number of blocks, the uncompressed size, the codec id and a magic number.
+ */
+@Slf4j
+public class CompressedLogFile {
+
+    public static final int DEFAULT_BLOCK_SIZE_IN_BYTES = 64 * 1024;
+    private static final int MAGIC = 0x434c4f47;
+    private static final int TRAILER_SIZE_IN_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Byte.BYTES + Integer.BYTES;
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+
+    private final Path filePath;
+    private final Cache<CompressedBlockKey, byte[]> blockCache;
+    private final CompressionCodec codec;
+    private final int blockSizeInBytes;
+    private final long uncompressedSize;
+    private final long[] blockStartPositions;
+    private FileChannel readChannel;
+
+    /**
+     * Open a compressed log file.
+     *
+     * @param filePath   Path of the compressed file.
+     * @param blockCache Cache of decompressed blocks, null to decompress on every read.
+     */
+    public CompressedLogFile(Path filePath, Cache<CompressedBlockKey, byte[]> blockCache) throws IOException {
+        this.filePath = filePath;
+        this.blockCache = blockCache;
+
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < TRAILER_SIZE_IN_BYTES) {
+                throw new IOException(String.format("%s is too short to be a compressed log file.", filePath));
+            }
+
+            ByteBuffer trailer = readFully(channel, fileSize - TRAILER_SIZE_IN_BYTES, TRAILER_SIZE_IN_BYTES);
+            this.blockSizeInBytes = trailer.getInt();
+            int numberOfBlocks = trailer.getInt();
+            this.uncompressedSize = trailer.getLong();
+            this.codec = CompressionCodecs.get(trailer.get());
+            if (trailer.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a compressed log file.", filePath));
+            }
+
+            int blockTableSize = (numberOfBlocks + 1) * Long.BYTES;
+            ByteBuffer blockTable = readFully(channel, fileSize - TRAILER_SIZE_IN_BYTES - blockTableSize, blockTableSize);
+            this.blockStartPositions = new long[numberOfBlocks + 1];
+            for (int i = 0; i <= numberOfBlocks; i++) {
+                this.blockStartPositions[i] = blockTable.getLong();
+            }
+        }
+
+        log.debug("Opened {} with {} blocks of {} uncompressed bytes.", filePath, this.getNumberOfBlocks(), this.uncompressedSize);
+    }
+
+    /**
+     * Compress a log file. The compressed file is written under a temporary name and moved in place once it is
+     * on disk, so a crash never leaves a partial compressed file behind.
+     *
+     * @param logFilePath           The log file, left untouched.
+     * @param compressedLogFilePath The compressed file to write.
+     * @param codec                 Codec of the blocks.
+     * @param blockSizeInBytes      Uncompressed size of a block.
+     */
+    public static void write(Path logFilePath, Path compressedLogFilePath, CompressionCodec codec, int blockSizeInBytes) throws IOException {
+        Path temporaryFilePath = Paths.get(compressedLogFilePath.toString() + TEMPORARY_FILE_EXTENSION);
+
+        try (FileChannel source = FileChannel.open(logFilePath, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(temporaryFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long uncompressedSize = source.size();
+            int numberOfBlocks = (int) ((uncompressedSize + blockSizeInBytes - 1) / blockSizeInBytes);
+            ByteBuffer blockTable = ByteBuffer.allocate((numberOfBlocks + 1) * Long.BYTES);
+            byte[] block = new byte[blockSizeInBytes];
+
+            for (int i = 0; i < numberOfBlocks; i++) {
+                int blockLength = (int) Math.min(blockSizeInBytes, uncompressedSize - (long) i * blockSizeInBytes);
+                ByteBuffer blockBuffer = ByteBuffer.wrap(block, 0, blockLength);
+                while (blockBuffer.hasRemaining()) {
+                    if (source.read(blockBuffer, (long) i * blockSizeInBytes + blockBuffer.position()) < 0) {
+                        throw new EOFException(String.format("Reached the end of %s while compressing it.", logFilePath));
+                    }
+                }
+
+                blockTable.putLong(target.position());
+                writeFully(target, ByteBuffer.wrap(codec.compress(block, 0, blockLength)));
+            }
+            blockTable.putLong(target.position());
+            blockTable.flip();
+            writeFully(target, blockTable);
+
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE_IN_BYTES);
+            trailer.putInt(blockSizeInBytes).putInt(numberOfBlocks).putLong(uncompressedSize).put(codec.getId()).putInt(MAGIC);
+            trailer.flip();
+            writeFully(target, trailer);
+            target.force(true);
+
+            log.debug("Compressed {} from {} to {} bytes.", logFilePath, uncompressedSize, target.size());
+        }
+
+        Files.move(temporaryFilePath, compressedLogFilePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public ByteBuffer read(long position, int size) throws IOException {
+        if (position < 0 || position + size > this.uncompressedSize) {
+            throw new EOFException(String.format("Reached the end of %s while reading %d bytes at %d.", this.filePath, size, position));
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        long currentPosition = position;
+        while (buffer.hasRemaining()) {
+            int blockNumber = (int) (currentPosition / this.blockSizeInBytes);
+            int positionWithinBlock = (int) (currentPosition - (long) blockNumber * this.blockSizeInBytes);
+            byte[] block = this.readBlock(blockNumber);
+
+            int length = Math.min(block.length - positionWithinBlock, buffer.remaining());
+            buffer.put(block, positionWithinBlock, length);
+            currentPosition += length;
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    public long getUncompressedSize() {
+        return this.uncompressedSize;
+    }
+
+    public Path getFilePath() {
+        return this.filePath;
+    }
+
+    /**
+     * Close the read channel. The file stays readable, the channel is opened again on the next read.
+     */
+    public synchronized void close() throws IOException {
+        if (this.readChannel == null) {
+            return;
+        }
+
+        this.readChannel.close();
+        this.readChannel = null;
+        log.debug("Closed {}.", this.filePath);
+    }
+
+    public void delete() throws IOException {
+        this.close();
+        log.debug("Trying to delete {}.", this.filePath);
+        Files.deleteIfExists(this.filePath);
+    }
+
+    private int getNumberOfBlocks() {
+        return this.blockStartPositions.length - 1;
+    }
+
+    private byte[] readBlock(int blockNumber) throws IOException {
+        CompressedBlockKey key = new CompressedBlockKey(this.filePath, blockNumber);
+        byte[] block = this.blockCache == null ? null : this.blockCache.get(key);
+        if (block != null) {
+            return block;
+        }
+
+        long compressedStart = this.blockStartPositions[blockNumber];
+        int compressedSize = (int) (this.blockStartPositions[blockNumber + 1] - compressedStart);
+        byte[] compressed = new byte[compressedSize];
+        this.readFromFile(ByteBuffer.wrap(compressed), compressedStart, blockNumber);
+
+        block = new byte[(int) Math.min(this.blockSizeInBytes, this.uncompressedSize - (long) blockNumber * this.blockSizeInBytes)];
+        this.codec.decompress(compressed, block);
+        log.debug("Decompressed block {} of {}.", blockNumber, this.filePath);
+
+        if (this.blockCache != null) {
+            this.blockCache.put(key, block);
+        }
+        return block;
+    }
+
+    private void readFromFile(ByteBuffer buffer, long position, int blockNumber) throws IOException {
+        FileChannel channel = this.getReadChannel();
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new EOFException(String.format("Reached the end of %s while reading block %d.", this.filePath, blockNumber));
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // An interrupted reader closes the channel for everyone, and so does close(). Only the interrupted reader fails.
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            this.readFromFile(buffer, position, blockNumber);
+        }
+    }
+
+    private synchronized FileChannel getReadChannel() throws IOException {
+        if (this.readChannel == null || !this.readChannel.isOpen()) {
+            log.debug("Opening read channel for {}.", this.filePath);
+            this.readChannel = FileChannel.open(this.filePath, StandardOpenOption.READ);
+        }
+
+        return this.readChannel;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException(String.format("Reached the end of the file while reading %d bytes at %d.", size, position));
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
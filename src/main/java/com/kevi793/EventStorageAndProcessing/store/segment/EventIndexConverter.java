@@ -0,0 +1,74 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Migrates index files written in the old text format, one "offset position size" line per event,
+ * to the fixed width binary format of {@link EventIndexSegment}.
+ */
+@Slf4j
+public class EventIndexConverter {
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * A binary index always starts with the relative offset 0, i.e. with a zero byte,
+     * while a text index starts with a digit.
+     */
+    public static boolean isLegacy(Path indexFilePath) throws IOException {
+        if (!Files.exists(indexFilePath) || Files.size(indexFilePath) == 0) {
+            return false;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(indexFilePath)) {
+            return inputStream.read() != 0;
+        }
+    }
+
+    public static void convertIfLegacy(Path indexFilePath) throws IOException {
+        if (!isLegacy(indexFilePath)) {
+            return;
+        }
+
+        log.info("Converting legacy text index {} to the binary format.", indexFilePath);
+        Path tempFilePath = Paths.get(indexFilePath.toString() + TEMP_FILE_SUFFIX);
+        ByteBuffer entry = ByteBuffer.allocate(EventIndexSegment.ENTRY_SIZE_IN_BYTES);
+        int numberOfEntries = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFilePath, StandardCharsets.UTF_8);
+             FileChannel channel = FileChannel.open(tempFilePath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                EventIndex eventIndex = EventIndex.from(line);
+                entry.clear();
+                entry.putInt(eventIndex.getEventOffset()).putLong(eventIndex.getStartPosition()).putInt(eventIndex.getSize());
+                entry.flip();
+                while (entry.hasRemaining()) {
+                    channel.write(entry);
+                }
+                numberOfEntries++;
+            }
+            channel.force(true);
+        }
+
+        Files.move(tempFilePath, indexFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Converted {} entries of {}.", numberOfEntries, indexFilePath);
+    }
+
+}
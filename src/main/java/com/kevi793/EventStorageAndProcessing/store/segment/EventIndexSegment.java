@@ -3,37 +3,238 @@ package com.kevi793.EventStorageAndProcessing.store.segment;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 
+/**
+ * Memory-mapped index of a segment.
+ * Every entry is {@link #ENTRY_SIZE_IN_BYTES} wide and holds the relative offset of the event, its start position
+ * in the log file and its size, so the entry of an event is found by computing its slot.
+ * The file is grown in chunks while the segment is written and trimmed to its entries when it is closed.
+ * A file left untrimmed by a crash is zero filled past its last entry.
+ */
 @Slf4j
 public class EventIndexSegment extends BaseSegmentFile {
 
+    public static final int ENTRY_SIZE_IN_BYTES = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int DEFAULT_INITIAL_CAPACITY_IN_ENTRIES = 1024;
+    private static final int POSITION_FIELD_OFFSET = Integer.BYTES;
+    private static final int SIZE_FIELD_OFFSET = Integer.BYTES + Long.BYTES;
+
+    private FileChannel channel;
+    private volatile MappedByteBuffer mappedIndex;
+    private volatile int numberOfEntries;
+    private int capacityInEntries;
+
     public EventIndexSegment(Path eventIndexSegmentFilePath) throws IOException {
         super(eventIndexSegmentFilePath);
+        EventIndexConverter.convertIfLegacy(this.filePath);
+        this.open();
+    }
+
+    public synchronized void append(EventIndex eventIndex) throws IOException {
+        this.ensureCapacity(this.numberOfEntries + 1);
+        this.writeSlot(this.numberOfEntries, eventIndex);
+        this.numberOfEntries++;
+    }
+
+    /**
+     * Append the entries and make them visible to readers at once.
+     */
+    public synchronized void appendEntries(List<EventIndex> eventIndexes) throws IOException {
+        this.ensureCapacity(this.numberOfEntries + eventIndexes.size());
+        for (int i = 0; i < eventIndexes.size(); i++) {
+            this.writeSlot(this.numberOfEntries + i, eventIndexes.get(i));
+        }
+        this.numberOfEntries += eventIndexes.size();
+    }
+
+    /**
+     * Map the file for at least capacityInEntries entries ahead of the appends, so they do not map it again.
+     */
+    public synchronized void preallocate(int capacityInEntries) throws IOException {
+        this.ensureCapacity(capacityInEntries);
     }
 
     public EventIndex read(int offset) throws IOException {
         log.debug("Trying to get index of the event at offset {} from file {}.", offset, this.filePath);
-        List<String> lines = Files.readAllLines(this.filePath);
+        int entries = this.numberOfEntries;
 
-        if (lines.size() == 0) {
+        if (entries == 0) {
             log.debug("Index file {} is empty.", this.filePath);
             return null;
         }
 
-        if (offset >= lines.size()) {
+        if (offset < 0 || offset >= entries) {
             log.debug("Offset {} not present in {}.", offset, this.filePath);
             return null;
         }
 
-        return EventIndex.from(lines.get(offset));
+        return this.readSlot(this.getMappedIndex(), offset);
     }
 
     public EventIndex getLatestEventIndex() throws IOException {
-        List<String> lines = Files.readAllLines(this.filePath);
-        return lines.size() == 0 ? null : EventIndex.from(lines.get(lines.size() - 1));
+        int entries = this.numberOfEntries;
+        return entries == 0 ? null : this.readSlot(this.getMappedIndex(), entries - 1);
+    }
+
+    public int getNumberOfEntries() {
+        return this.numberOfEntries;
+    }
+
+    @Override
+    public long getFileSize() {
+        return (long) this.numberOfEntries * ENTRY_SIZE_IN_BYTES;
+    }
+
+    /**
+     * Number of bytes of the file currently mapped, 0 once the mapping is released.
+     */
+    public long getMappedBytes() {
+        MappedByteBuffer index = this.mappedIndex;
+        return index == null ? 0 : index.capacity();
+    }
+
+    @Override
+    public synchronized void force() {
+        if (this.mappedIndex != null) {
+            this.mappedIndex.force();
+        }
+    }
+
+    /**
+     * Trim the file to the entries written so far and release the channel.
+     * The mapping stays valid for reads; the channel is opened again on the next append.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+
+        this.channel.truncate(this.getFileSize());
+        this.channel.close();
+        this.channel = null;
+        // The mapping now goes past the end of the file, so it must be grown again before the next append.
+        this.capacityInEntries = this.numberOfEntries;
+        log.debug("Closed {} with {} entries.", this.filePath, this.numberOfEntries);
+    }
+
+    /**
+     * Drop the entries from numberOfEntries on. Their slots are zero filled, so they are not found again when the
+     * file is next opened.
+     */
+    public synchronized void truncate(int numberOfEntries) throws IOException {
+        if (numberOfEntries >= this.numberOfEntries) {
+            return;
+        }
+
+        MappedByteBuffer index = this.getMappedIndex();
+        for (int position = numberOfEntries * ENTRY_SIZE_IN_BYTES; position < this.numberOfEntries * ENTRY_SIZE_IN_BYTES; position++) {
+            index.put(position, (byte) 0);
+        }
+        index.force();
+        log.info("Truncated {} from {} to {} entries.", this.filePath, this.numberOfEntries, numberOfEntries);
+        this.numberOfEntries = numberOfEntries;
+    }
+
+    /**
+     * Close the index and drop its mapping. The mapping is created again by the next read or append.
+     * It is not unmapped explicitly, a reader may still hold it; the memory is returned once it is garbage collected.
+     */
+    public synchronized void release() throws IOException {
+        this.close();
+        this.mappedIndex = null;
+        this.capacityInEntries = 0;
+        log.debug("Released mapping of {}.", this.filePath);
+    }
+
+    /**
+     * Map the entries that are already in the file. The channel is only kept open while the index is appended to.
+     */
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.filePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            int entriesInFile = (int) (this.channel.size() / ENTRY_SIZE_IN_BYTES);
+            this.map(entriesInFile);
+            this.numberOfEntries = this.findNumberOfEntries(entriesInFile);
+        } finally {
+            this.channel.close();
+            this.channel = null;
+        }
+        log.debug("Opened {} with {} entries.", this.filePath, this.numberOfEntries);
+    }
+
+    private MappedByteBuffer getMappedIndex() throws IOException {
+        MappedByteBuffer index = this.mappedIndex;
+        return index != null ? index : this.remap();
+    }
+
+    private synchronized MappedByteBuffer remap() throws IOException {
+        if (this.mappedIndex == null) {
+            try (FileChannel readChannel = FileChannel.open(this.filePath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.mappedIndex = readChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) this.numberOfEntries * ENTRY_SIZE_IN_BYTES);
+                this.capacityInEntries = this.numberOfEntries;
+            }
+            log.debug("Mapped {} again with {} entries.", this.filePath, this.numberOfEntries);
+        }
+
+        return this.mappedIndex;
+    }
+
+    private void ensureCapacity(int requiredCapacityInEntries) throws IOException {
+        if (this.channel == null) {
+            this.channel = FileChannel.open(this.filePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        if (requiredCapacityInEntries > this.capacityInEntries) {
+            int capacityInEntries = Math.max(this.capacityInEntries, DEFAULT_INITIAL_CAPACITY_IN_ENTRIES);
+            while (capacityInEntries < requiredCapacityInEntries) {
+                capacityInEntries *= 2;
+            }
+            this.map(capacityInEntries);
+        }
+    }
+
+    private void writeSlot(int slotNumber, EventIndex eventIndex) {
+        int slot = slotNumber * ENTRY_SIZE_IN_BYTES;
+        this.mappedIndex.putInt(slot, eventIndex.getEventOffset());
+        this.mappedIndex.putLong(slot + POSITION_FIELD_OFFSET, eventIndex.getStartPosition());
+        this.mappedIndex.putInt(slot + SIZE_FIELD_OFFSET, eventIndex.getSize());
+    }
+
+    private void map(int capacityInEntries) throws IOException {
+        log.debug("Mapping {} with a capacity of {} entries.", this.filePath, capacityInEntries);
+        this.mappedIndex = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacityInEntries * ENTRY_SIZE_IN_BYTES);
+        this.capacityInEntries = capacityInEntries;
+    }
+
+    /**
+     * Every written entry has a non zero size, and the unused tail of the file is zero filled,
+     * so the number of entries is the first slot whose size is zero.
+     */
+    private int findNumberOfEntries(int entriesInFile) {
+        int low = 0;
+        int high = entriesInFile;
+
+        while (low < high) {
+            int mid = low + (high - low) / 2;
+            if (this.mappedIndex.getInt(mid * ENTRY_SIZE_IN_BYTES + SIZE_FIELD_OFFSET) == 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    private EventIndex readSlot(MappedByteBuffer index, int slotNumber) {
+        int slot = slotNumber * ENTRY_SIZE_IN_BYTES;
+        return new EventIndex(index.getInt(slot), index.getLong(slot + POSITION_FIELD_OFFSET), index.getInt(slot + SIZE_FIELD_OFFSET));
     }
 
 }
@@ -1,25 +1,267 @@
 package com.kevi793.EventStorageAndProcessing.store.segment;
 
-import java.io.File;
+import com.kevi793.EventStorageAndProcessing.Constant;
+import com.kevi793.EventStorageAndProcessing.Util;
+import com.kevi793.EventStorageAndProcessing.cache.Cache;
+import com.kevi793.EventStorageAndProcessing.exception.CorruptRecordException;
+import com.kevi793.EventStorageAndProcessing.store.Event;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.CompressionCodec;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
+/**
+ * The log file of a segment.
+ * Once the segment is sealed, the log can be replaced by a {@link CompressedLogFile}. Reads then go to the
+ * compressed file, which every instance of the segment switches to as soon as it finds the log file gone.
+ */
+@Slf4j
 public class EventLogSegment extends BaseSegmentFile {
 
-    private static final String READ_MODE = "r";
+    @Getter
+    private final RecordFormat recordFormat;
+    private final Path compressedLogFilePath;
+    private final Cache<CompressedBlockKey, byte[]> compressedBlockCache;
+    private volatile CompressedLogFile compressedLogFile;
 
     public EventLogSegment(Path eventLogSegmentFilePath) throws IOException {
-        super(eventLogSegmentFilePath);
+        this(eventLogSegmentFilePath, BaseSegmentFile.DEFAULT_WRITE_BUFFER_SIZE_IN_BYTES, RecordFormat.TEXT);
+    }
+
+    public EventLogSegment(Path eventLogSegmentFilePath, int writeBufferSizeInBytes, RecordFormat recordFormatForNewFile) throws IOException {
+        this(eventLogSegmentFilePath, null, writeBufferSizeInBytes, recordFormatForNewFile, null);
+    }
+
+    /**
+     * @param compressedLogFilePath Path of the compressed log file, null if the segment is never compressed.
+     * @param compressedBlockCache  Cache of decompressed blocks, null to decompress on every read.
+     */
+    public EventLogSegment(Path eventLogSegmentFilePath, Path compressedLogFilePath, int writeBufferSizeInBytes,
+                           RecordFormat recordFormatForNewFile, Cache<CompressedBlockKey, byte[]> compressedBlockCache) throws IOException {
+        super(eventLogSegmentFilePath, writeBufferSizeInBytes, compressedLogFilePath == null || !Files.exists(compressedLogFilePath));
+        this.compressedLogFilePath = compressedLogFilePath;
+        this.compressedBlockCache = compressedBlockCache;
+
+        if (compressedLogFilePath != null && Files.exists(compressedLogFilePath)) {
+            // The log file is left behind if the process stopped between compressing it and deleting it.
+            Files.deleteIfExists(this.filePath);
+            this.compressedLogFile = new CompressedLogFile(compressedLogFilePath, compressedBlockCache);
+        }
+        this.recordFormat = this.readOrWriteHeader(recordFormatForNewFile);
+    }
+
+    /**
+     * Path of the compressed log file, null if the segment is never compressed.
+     */
+    public Path getCompressedLogFilePath() {
+        return this.compressedLogFilePath;
+    }
+
+    public boolean isCompressed() {
+        return this.compressedLogFile != null;
+    }
+
+    /**
+     * Replace the log file with a compressed copy. Must only be called once the segment is sealed.
+     */
+    public synchronized void compress(CompressionCodec codec, int blockSizeInBytes) throws IOException {
+        if (this.compressedLogFilePath == null) {
+            throw new IllegalStateException(String.format("%s has no compressed log file path.", this.filePath));
+        }
+        if (this.isCompressed() || this.switchToCompressedLogFile()) {
+            return;
+        }
+
+        this.close();
+        CompressedLogFile.write(this.filePath, this.compressedLogFilePath, codec, blockSizeInBytes);
+        this.compressedLogFile = new CompressedLogFile(this.compressedLogFilePath, this.compressedBlockCache);
+        // Another instance of the segment opened after the move deletes the log file itself.
+        Files.deleteIfExists(this.filePath);
+        log.debug("Replaced {} with {}.", this.filePath, this.compressedLogFilePath);
+    }
+
+    /**
+     * Open a channel to read the uncompressed log file.
+     *
+     * @return The channel, null if the log is compressed.
+     */
+    public FileChannel openReadChannel() throws IOException {
+        if (this.isCompressed()) {
+            return null;
+        }
+
+        try {
+            return FileChannel.open(this.filePath, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            if (this.switchToCompressedLogFile()) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Append the event in the record format of this file.
+     *
+     * @return The number of bytes to read back for the event.
+     */
+    public int append(Event event) throws IOException {
+        byte[] record = this.toRecord(event);
+        this.append(record);
+        return this.getIndexedSize(record);
+    }
+
+    public byte[] toRecord(Event event) {
+        if (this.recordFormat == RecordFormat.BINARY) {
+            return event.toBinaryRecord();
+        }
+
+        return Util.appendNewLine(event.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Number of bytes of the record to read back for the event. Text records are read back without their new line.
+     */
+    public int getIndexedSize(byte[] record) {
+        if (this.recordFormat == RecordFormat.BINARY) {
+            return record.length;
+        }
+
+        return record.length - Constant.NEW_LINE_DELIMITER.length();
+    }
+
+    /**
+     * Number of bytes a record takes in the log, from the number of bytes indexed for it.
+     */
+    public int getRecordSize(int indexedSize) {
+        if (this.recordFormat == RecordFormat.BINARY) {
+            return indexedSize;
+        }
+
+        return indexedSize + Constant.NEW_LINE_DELIMITER.length();
+    }
+
+    /**
+     * Cut the log file to the given size. Must not be called while the file is appended to.
+     */
+    public synchronized void truncate(long size) throws IOException {
+        this.close();
+        try (FileChannel channel = FileChannel.open(this.filePath, StandardOpenOption.WRITE)) {
+            log.info("Truncating {} from {} to {} bytes.", this.filePath, channel.size(), size);
+            channel.truncate(size);
+        }
+    }
+
+    public Event readEvent(long offset, int size) throws IOException {
+        return this.decode(this.read(offset, size));
+    }
+
+    /**
+     * Decode a record read from this file.
+     *
+     * @param record Heap buffer holding exactly the indexed bytes of one record.
+     */
+    public Event decode(ByteBuffer record) throws CorruptRecordException {
+        if (this.recordFormat == RecordFormat.BINARY) {
+            return Event.from(record);
+        }
+
+        return Event.from(new String(record.array(), record.arrayOffset() + record.position(), record.remaining(), StandardCharsets.UTF_8));
+    }
+
+    public ByteBuffer read(long offset, int size) throws IOException {
+        CompressedLogFile compressedLogFile = this.compressedLogFile;
+        if (compressedLogFile != null) {
+            return compressedLogFile.read(offset, size);
+        }
+
+        this.flushIfNeeded(offset + size);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        try (FileChannel channel = this.openReadChannel()) {
+            if (channel == null) {
+                return this.compressedLogFile.read(offset, size);
+            }
+
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException(String.format("Reached the end of %s while reading %d bytes at %d.", this.filePath, size, offset));
+                }
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public long getFileSize() throws IOException {
+        CompressedLogFile compressedLogFile = this.compressedLogFile;
+        if (compressedLogFile != null) {
+            return compressedLogFile.getUncompressedSize();
+        }
+
+        try {
+            return super.getFileSize();
+        } catch (NoSuchFileException e) {
+            if (this.switchToCompressedLogFile()) {
+                return this.compressedLogFile.getUncompressedSize();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        super.close();
+        CompressedLogFile compressedLogFile = this.compressedLogFile;
+        if (compressedLogFile != null) {
+            compressedLogFile.close();
+        }
+    }
+
+    @Override
+    public void deleteFile() throws IOException {
+        super.deleteFile();
+        if (this.compressedLogFilePath != null) {
+            Files.deleteIfExists(this.compressedLogFilePath);
+        }
+    }
+
+    /**
+     * Another instance of the segment compressed it after this one was opened.
+     *
+     * @return True if the log is compressed now.
+     */
+    private synchronized boolean switchToCompressedLogFile() throws IOException {
+        if (this.compressedLogFile == null && this.compressedLogFilePath != null && Files.exists(this.compressedLogFilePath)) {
+            log.debug("{} was compressed by another instance of the segment.", this.filePath);
+            this.compressedLogFile = new CompressedLogFile(this.compressedLogFilePath, this.compressedBlockCache);
+        }
+
+        return this.compressedLogFile != null;
     }
 
-    public byte[] read(long offset, int size) throws IOException {
-        File segmentLogFile = new File(this.filePath.toString());
-        RandomAccessFile randomAccessFile = new RandomAccessFile(segmentLogFile, READ_MODE);
-        randomAccessFile.seek(offset);
+    private RecordFormat readOrWriteHeader(RecordFormat recordFormatForNewFile) throws IOException {
+        if (this.getFileSize() == 0) {
+            if (recordFormatForNewFile.getHeaderSize() > 0) {
+                log.debug("Writing {} header to {}.", recordFormatForNewFile, this.filePath);
+                this.append(new byte[]{recordFormatForNewFile.getVersion()});
+                this.flush();
+            }
+            return recordFormatForNewFile;
+        }
 
-        byte[] bytes = new byte[size];
-        randomAccessFile.readFully(bytes, 0, size);
-        return bytes;
+        ByteBuffer header = this.read(0, 1);
+        return RecordFormat.fromHeader(header.get(0));
     }
 }
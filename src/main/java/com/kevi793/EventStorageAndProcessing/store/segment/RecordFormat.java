@@ -0,0 +1,36 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import lombok.Getter;
+
+/**
+ * Layout of the records in a segment log file.
+ * Binary log files start with a header byte holding the format version; text log files have no header.
+ */
+@Getter
+public enum RecordFormat {
+
+    /**
+     * One "offset:N createTime:T payload:..." line per event.
+     */
+    TEXT((byte) 0, 0),
+
+    /**
+     * Length prefixed records with a checksum, see {@link com.kevi793.EventStorageAndProcessing.store.Event#toBinaryRecord()}.
+     */
+    BINARY((byte) 1, 1);
+
+    private final byte version;
+    private final int headerSize;
+
+    RecordFormat(byte version, int headerSize) {
+        this.version = version;
+        this.headerSize = headerSize;
+    }
+
+    /**
+     * Find the format of an existing log file from its first byte.
+     */
+    public static RecordFormat fromHeader(byte firstByte) {
+        return firstByte == BINARY.version ? BINARY : TEXT;
+    }
+}
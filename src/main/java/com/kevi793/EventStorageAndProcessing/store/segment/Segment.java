@@ -2,6 +2,8 @@ package com.kevi793.EventStorageAndProcessing.store.segment;
 
 import com.kevi793.EventStorageAndProcessing.Constant;
 import com.kevi793.EventStorageAndProcessing.store.Event;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.CompressionCodec;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
@@ -10,6 +12,9 @@ import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 @Slf4j
 @Getter
@@ -17,62 +22,312 @@ public class Segment {
 
     private static final String LOG_FILE_EXTENSION = "log";
     private static final String INDEX_FILE_EXTENSION = "index";
+    private static final String COMPRESSED_LOG_FILE_EXTENSION = "clog";
+    private static final String TIME_INDEX_FILE_EXTENSION = "timeindex";
 
     private final String directory;
     private final SegmentName segmentName;
+    private final SegmentConfig segmentConfig;
 
     private EventIndexSegment eventIndexSegment;
     private EventLogSegment eventLogSegment;
+    private TimeIndexSegment timeIndexSegment;
 
+    @Getter(AccessLevel.NONE)
     private int eventOffset = 0;
 
     public Segment(String directory, SegmentName segmentName) throws IOException {
+        this(directory, segmentName, SegmentConfig.DEFAULT);
+    }
+
+    public Segment(String directory, SegmentName segmentName, SegmentConfig segmentConfig) throws IOException {
+        this(directory, segmentName, segmentConfig, false);
+    }
+
+    /**
+     * @param recoverTail Make the log and the index agree, for the segment that was being written to when the store stopped.
+     */
+    public Segment(String directory, SegmentName segmentName, SegmentConfig segmentConfig, boolean recoverTail) throws IOException {
         this.directory = directory;
         this.segmentName = segmentName;
-        this.init();
+        this.segmentConfig = segmentConfig;
+        this.init(recoverTail);
     }
 
-    private void init() throws IOException {
+    private void init(boolean recoverTail) throws IOException {
         this.createDirectoryIfDoesNotExist();
-        this.eventLogSegment = new EventLogSegment(Paths.get(directory, this.segmentName.toString() + Constant.DOT + LOG_FILE_EXTENSION));
-        this.eventIndexSegment = new EventIndexSegment(Paths.get(directory, this.segmentName.toString() + Constant.DOT + INDEX_FILE_EXTENSION));
+        this.eventLogSegment = new EventLogSegment(Paths.get(directory, getFileName(this.segmentName, LOG_FILE_EXTENSION)),
+                Paths.get(directory, getFileName(this.segmentName, COMPRESSED_LOG_FILE_EXTENSION)),
+                this.segmentConfig.getWriteBufferSizeInBytes(), this.segmentConfig.getRecordFormat(), this.segmentConfig.getCompressedBlockCache());
+        this.eventIndexSegment = new EventIndexSegment(Paths.get(directory, getFileName(this.segmentName, INDEX_FILE_EXTENSION)));
+        if (recoverTail) {
+            this.recoverTail();
+        }
+        this.timeIndexSegment = new TimeIndexSegment(Paths.get(directory, getFileName(this.segmentName, TIME_INDEX_FILE_EXTENSION)),
+                this.segmentConfig.getTimeIndexIntervalInEvents(), this.eventIndexSegment.getNumberOfEntries());
         EventIndex latestEventIndex = this.eventIndexSegment.getLatestEventIndex();
         if (latestEventIndex != null) {
-            this.eventOffset = latestEventIndex.getEventOffset();
+            this.eventOffset = latestEventIndex.getEventOffset() + 1;
+        }
+    }
+
+    /**
+     * Make the log and the index agree after a crash. An event is appended to the log and then to the index, so the
+     * index may point past the end of the log, and the log may end with a torn record or records missing from the index.
+     * Index entries whose record is not entirely in the log or cannot be decoded are dropped, then the log is cut
+     * after the last indexed record.
+     */
+    private void recoverTail() throws IOException {
+        if (this.eventLogSegment.isCompressed()) {
+            return;
+        }
+
+        long logFileSize = this.eventLogSegment.getFileSize();
+        int numberOfEvents = this.eventIndexSegment.getNumberOfEntries();
+        long endOfLastRecord = this.eventLogSegment.getRecordFormat().getHeaderSize();
+
+        while (numberOfEvents > 0) {
+            EventIndex eventIndex = this.eventIndexSegment.read(numberOfEvents - 1);
+            long endOfRecord = eventIndex.getStartPosition() + this.eventLogSegment.getRecordSize(eventIndex.getSize());
+            if (endOfRecord <= logFileSize && this.isReadable(eventIndex)) {
+                endOfLastRecord = endOfRecord;
+                break;
+            }
+
+            log.warn("Dropping event at position {} of {} as its record is torn.", numberOfEvents - 1, this.segmentName);
+            numberOfEvents--;
+        }
+
+        this.eventIndexSegment.truncate(numberOfEvents);
+        if (logFileSize > endOfLastRecord) {
+            log.warn("Dropping {} bytes missing from the index at the end of {}.", logFileSize - endOfLastRecord, this.segmentName);
+            this.eventLogSegment.truncate(endOfLastRecord);
+        }
+    }
+
+    private boolean isReadable(EventIndex eventIndex) {
+        try {
+            this.eventLogSegment.readEvent(eventIndex.getStartPosition(), eventIndex.getSize());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to read event at {} of {}. Exception is {}.", eventIndex.getStartPosition(), this.segmentName, e);
+            return false;
         }
     }
 
-    public void write(Object payload) throws IOException {
+    /**
+     * Append an event whose payload is already serialized.
+     *
+     * @return The position of the event within the segment.
+     */
+    public int writeSerialized(byte[] serializedPayload) throws IOException {
+        int positionWithinSegment = this.eventIndexSegment.getNumberOfEntries();
         long currentLogSegmentFileSize = this.eventLogSegment.getFileSize();
-        String messageString = new Event(this.eventOffset, payload).toString();
-        this.eventLogSegment.append(messageString);
+        Event event = Event.fromSerializedPayload(this.eventOffset, serializedPayload);
+        int size = this.eventLogSegment.append(event);
 
-        EventIndex eventIndex = new EventIndex(this.eventOffset, currentLogSegmentFileSize, messageString.length());
-        this.eventIndexSegment.append(eventIndex.toString());
+        EventIndex eventIndex = new EventIndex(this.eventOffset, currentLogSegmentFileSize, size);
+        this.eventIndexSegment.append(eventIndex);
+        this.timeIndexSegment.maybeAppend(event.getCreateTime().getTime(), positionWithinSegment);
 
         this.eventOffset++;
+        return positionWithinSegment;
+    }
+
+    /**
+     * Append payloads that are already serialized, starting from fromIndex, until the log file reaches
+     * maxLogFileSizeInBytes. At least one payload is written. The records go to the log in one gathered write
+     * and to the index in one append.
+     *
+     * @return The number of payloads written to the segment.
+     */
+    public int writeAll(List<byte[]> serializedPayloads, int fromIndex, long maxLogFileSizeInBytes) throws IOException {
+        int firstPositionWithinSegment = this.eventIndexSegment.getNumberOfEntries();
+        long position = this.eventLogSegment.getFileSize();
+        List<byte[]> records = new ArrayList<>();
+        List<EventIndex> eventIndexes = new ArrayList<>();
+        List<Long> createTimes = new ArrayList<>();
+
+        for (int i = fromIndex; i < serializedPayloads.size() && (position < maxLogFileSizeInBytes || records.isEmpty()); i++) {
+            Event event = Event.fromSerializedPayload(this.eventOffset, serializedPayloads.get(i));
+            byte[] record = this.eventLogSegment.toRecord(event);
+            eventIndexes.add(new EventIndex(this.eventOffset, position, this.eventLogSegment.getIndexedSize(record)));
+            createTimes.add(event.getCreateTime().getTime());
+            records.add(record);
+            position += record.length;
+            this.eventOffset++;
+        }
+
+        this.eventLogSegment.appendAll(records);
+        this.eventIndexSegment.appendEntries(eventIndexes);
+        for (int i = 0; i < createTimes.size(); i++) {
+            this.timeIndexSegment.maybeAppend(createTimes.get(i), firstPositionWithinSegment + i);
+        }
+        return records.size();
     }
 
-    public String read(int offset) throws IOException {
+    public Event read(int offset) throws IOException {
         EventIndex eventIndex = this.eventIndexSegment.read(offset);
 
         if (eventIndex == null) {
             return null;
         }
 
-        byte[] bytes = this.eventLogSegment.read(eventIndex.getStartPosition(), eventIndex.getSize());
-        return new String(bytes);
+        return this.eventLogSegment.readEvent(eventIndex.getStartPosition(), eventIndex.getSize());
+    }
+
+    /**
+     * Position within the segment of the first event created at or after the timestamp.
+     * The time index gives the position to start from, the events after it are read until one is found.
+     *
+     * @param timestamp Time in ms since the epoch.
+     * @return The position, -1 if every event of the segment was created before the timestamp.
+     */
+    public int findPositionForTimestamp(long timestamp) throws IOException {
+        try (SegmentReader segmentReader = new SegmentReader(this, this.timeIndexSegment.lookup(timestamp))) {
+            int positionWithinSegment = segmentReader.getPositionWithinSegment();
+            Event event;
+            while ((event = segmentReader.next()) != null) {
+                if (event.getCreateTime().getTime() >= timestamp) {
+                    log.debug("First event of {} created at or after {} is at position {}.", this.segmentName, timestamp, positionWithinSegment);
+                    return positionWithinSegment;
+                }
+                positionWithinSegment++;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Create time of the last event of the segment, -1 if the segment is empty.
+     */
+    public long getLatestEventCreateTime() throws IOException {
+        int numberOfEvents = this.getNumberOfEvents();
+        if (numberOfEvents == 0) {
+            return -1;
+        }
+
+        return this.read(numberOfEvents - 1).getCreateTime().getTime();
+    }
+
+    /**
+     * Create time of the first event of the segment, -1 if the segment is empty.
+     */
+    public long getEarliestEventCreateTime() throws IOException {
+        long earliestTimestamp = this.timeIndexSegment.getEarliestTimestamp();
+        if (earliestTimestamp >= 0 || this.getNumberOfEvents() == 0) {
+            return earliestTimestamp;
+        }
+
+        // The segment was written before it had a time index.
+        return this.read(0).getCreateTime().getTime();
+    }
+
+    public int getNumberOfEvents() {
+        return this.eventIndexSegment.getNumberOfEntries();
     }
 
     public long getEventLogSegmentFileSize() throws IOException {
         return this.eventLogSegment.getFileSize();
     }
 
+    /**
+     * Open the files of a new segment for appending and map its index for expectedNumberOfEvents, so its first
+     * writes do not pay for it.
+     */
+    public void preallocate(int expectedNumberOfEvents) throws IOException {
+        this.eventLogSegment.openForAppend();
+        this.eventIndexSegment.preallocate(expectedNumberOfEvents);
+        this.timeIndexSegment.openForAppend();
+    }
+
+    public void flush() throws IOException {
+        this.eventLogSegment.flush();
+        this.eventIndexSegment.flush();
+        this.timeIndexSegment.flush();
+    }
+
+    public void force() throws IOException {
+        this.eventLogSegment.force();
+        this.eventIndexSegment.force();
+        this.timeIndexSegment.force();
+    }
+
+    public void close() throws IOException {
+        this.eventLogSegment.close();
+        this.eventIndexSegment.close();
+        this.timeIndexSegment.close();
+    }
+
+    /**
+     * Compress the log of a sealed segment.
+     */
+    public void compress(CompressionCodec codec, int blockSizeInBytes) throws IOException {
+        this.eventIndexSegment.close();
+        this.timeIndexSegment.close();
+        this.eventLogSegment.compress(codec, blockSizeInBytes);
+    }
+
+    public boolean isCompressed() {
+        return this.eventLogSegment.isCompressed();
+    }
+
+    /**
+     * Close the files of the segment and drop the mapping of its index.
+     * The segment stays usable, its files are opened and mapped again when they are next used.
+     */
+    public void release() throws IOException {
+        this.eventLogSegment.close();
+        this.eventIndexSegment.release();
+        this.timeIndexSegment.close();
+    }
+
+    /**
+     * Number of bytes of the segment files currently mapped in memory.
+     */
+    public long getMappedBytes() {
+        return this.eventIndexSegment.getMappedBytes();
+    }
+
     public void delete() throws IOException {
         this.eventIndexSegment.deleteFile();
+        this.timeIndexSegment.deleteFile();
         this.eventLogSegment.deleteFile();
     }
 
+    /**
+     * Whether any file of the segment exists in the directory.
+     */
+    public static boolean exists(String directory, SegmentName segmentName) {
+        for (String fileName : getFileNames(segmentName)) {
+            if (Files.exists(Paths.get(directory, fileName))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Whether the log of the segment is compressed, from its files.
+     */
+    public static boolean isCompressed(String directory, SegmentName segmentName) {
+        return Files.exists(Paths.get(directory, getFileName(segmentName, COMPRESSED_LOG_FILE_EXTENSION)));
+    }
+
+    /**
+     * Names of all the files a segment may have.
+     */
+    public static List<String> getFileNames(SegmentName segmentName) {
+        return Arrays.asList(getFileName(segmentName, LOG_FILE_EXTENSION), getFileName(segmentName, COMPRESSED_LOG_FILE_EXTENSION),
+                getFileName(segmentName, INDEX_FILE_EXTENSION), getFileName(segmentName, TIME_INDEX_FILE_EXTENSION));
+    }
+
+    private static String getFileName(SegmentName segmentName, String extension) {
+        return segmentName.toString() + Constant.DOT + extension;
+    }
+
     private void createDirectoryIfDoesNotExist() throws IOException {
         Path directoryPath = Paths.get(this.directory);
         try {
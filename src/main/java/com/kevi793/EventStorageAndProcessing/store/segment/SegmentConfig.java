@@ -0,0 +1,71 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import com.kevi793.EventStorageAndProcessing.cache.Cache;
+import lombok.Getter;
+
+/**
+ * Settings shared by all the segments of a store.
+ */
+@Getter
+public class SegmentConfig {
+
+    public static final SegmentConfig DEFAULT = new SegmentConfigBuilder().build();
+
+    private int writeBufferSizeInBytes = BaseSegmentFile.DEFAULT_WRITE_BUFFER_SIZE_IN_BYTES;
+    private RecordFormat recordFormat = RecordFormat.TEXT;
+    private Cache<CompressedBlockKey, byte[]> compressedBlockCache;
+    private int timeIndexIntervalInEvents = TimeIndexSegment.DEFAULT_INTERVAL_IN_EVENTS;
+
+    private SegmentConfig() {
+    }
+
+    public static class SegmentConfigBuilder {
+
+        private final SegmentConfig segmentConfig;
+
+        public SegmentConfigBuilder() {
+            this.segmentConfig = new SegmentConfig();
+        }
+
+        /**
+         * Builder starting from the settings of another builder, which are not changed by this one.
+         */
+        public SegmentConfigBuilder(SegmentConfigBuilder segmentConfigBuilder) {
+            this();
+            this.segmentConfig.writeBufferSizeInBytes = segmentConfigBuilder.segmentConfig.writeBufferSizeInBytes;
+            this.segmentConfig.recordFormat = segmentConfigBuilder.segmentConfig.recordFormat;
+            this.segmentConfig.compressedBlockCache = segmentConfigBuilder.segmentConfig.compressedBlockCache;
+            this.segmentConfig.timeIndexIntervalInEvents = segmentConfigBuilder.segmentConfig.timeIndexIntervalInEvents;
+        }
+
+        public SegmentConfigBuilder writeBufferSizeInBytes(int writeBufferSizeInBytes) {
+            this.segmentConfig.writeBufferSizeInBytes = writeBufferSizeInBytes;
+            return this;
+        }
+
+        public SegmentConfigBuilder recordFormat(RecordFormat recordFormat) {
+            this.segmentConfig.recordFormat = recordFormat;
+            return this;
+        }
+
+        /**
+         * Cache of decompressed blocks shared by the compressed segments, null to decompress on every read.
+         */
+        public SegmentConfigBuilder compressedBlockCache(Cache<CompressedBlockKey, byte[]> compressedBlockCache) {
+            this.segmentConfig.compressedBlockCache = compressedBlockCache;
+            return this;
+        }
+
+        /**
+         * Minimum number of events between two entries of the time index.
+         */
+        public SegmentConfigBuilder timeIndexIntervalInEvents(int timeIndexIntervalInEvents) {
+            this.segmentConfig.timeIndexIntervalInEvents = timeIndexIntervalInEvents;
+            return this;
+        }
+
+        public SegmentConfig build() {
+            return this.segmentConfig;
+        }
+    }
+}
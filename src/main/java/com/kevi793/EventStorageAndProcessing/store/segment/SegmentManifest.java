@@ -0,0 +1,251 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * List of the sealed segments of a store and the start of its active segment, so a store is opened without listing
+ * its directory or reading its sealed segments.
+ * A segment is recorded as sealed before the next one is created, so the active segment is always the one the
+ * manifest points to.
+ * <p>
+ * Layout: a magic number, a version, the number of events before the active segment and the number of entries,
+ * then per sealed segment the number of events before it, its number of events, the size of its log and a checksum
+ * of the entry. The manifest is rewritten under a temporary name and moved in place whenever a segment is sealed or
+ * deleted, so it is never torn.
+ */
+@Slf4j
+public class SegmentManifest {
+
+    public static final String FILE_NAME = "manifest";
+    private static final String TEMPORARY_FILE_EXTENSION = ".tmp";
+    private static final int MAGIC = 0x4d414e46;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE_IN_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final int ENTRY_SIZE_IN_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final Path filePath;
+    private final boolean force;
+    private final ConcurrentSkipListMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+    private volatile long numberOfEventsBeforeActiveSegment;
+    private volatile long logFileSizeInBytes;
+
+    /**
+     * @param force Force the manifest to disk whenever it is rewritten.
+     */
+    public SegmentManifest(Path directoryPath, boolean force) {
+        this.filePath = Paths.get(directoryPath.toString(), FILE_NAME);
+        this.force = force;
+    }
+
+    /**
+     * Read the manifest.
+     *
+     * @return False if there is no manifest or it is not valid, in which case the manifest is empty.
+     */
+    public synchronized boolean load() throws IOException {
+        this.entries.clear();
+        this.numberOfEventsBeforeActiveSegment = 0;
+        this.logFileSizeInBytes = 0;
+
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(this.filePath);
+        } catch (NoSuchFileException e) {
+            log.debug("No manifest at {}.", this.filePath);
+            return false;
+        }
+
+        ByteBuffer manifest = ByteBuffer.wrap(bytes);
+        if (manifest.remaining() < HEADER_SIZE_IN_BYTES || manifest.getInt() != MAGIC || manifest.getInt() != VERSION) {
+            log.warn("{} is not a valid manifest.", this.filePath);
+            return false;
+        }
+
+        long numberOfEventsBeforeActiveSegment = manifest.getLong();
+        int numberOfEntries = manifest.getInt();
+        if (manifest.remaining() != (long) numberOfEntries * ENTRY_SIZE_IN_BYTES) {
+            log.warn("{} has {} bytes for {} entries.", this.filePath, manifest.remaining(), numberOfEntries);
+            return false;
+        }
+
+        for (int i = 0; i < numberOfEntries; i++) {
+            long numberOfEventsBefore = manifest.getLong();
+            int numberOfEvents = manifest.getInt();
+            long logFileSizeInBytes = manifest.getLong();
+            if (manifest.getInt() != checksum(numberOfEventsBefore, numberOfEvents, logFileSizeInBytes)) {
+                log.warn("Checksum mismatch for entry {} of {}.", i, this.filePath);
+                this.entries.clear();
+                this.logFileSizeInBytes = 0;
+                return false;
+            }
+
+            this.put(new Entry(new SegmentName(numberOfEventsBefore), numberOfEvents, logFileSizeInBytes));
+        }
+
+        this.numberOfEventsBeforeActiveSegment = numberOfEventsBeforeActiveSegment;
+        log.debug("Loaded {} sealed segments from {}.", this.entries.size(), this.filePath);
+        return true;
+    }
+
+    /**
+     * Record a sealed segment. The segment that follows it becomes the active segment.
+     */
+    public synchronized void seal(Entry entry) throws IOException {
+        this.put(entry);
+        this.numberOfEventsBeforeActiveSegment = Math.max(this.numberOfEventsBeforeActiveSegment, entry.getNumberOfEventsBeforeNextSegment());
+        this.write();
+    }
+
+    /**
+     * Record the segments of a store that had no manifest.
+     *
+     * @param entries                           The sealed segments.
+     * @param numberOfEventsBeforeActiveSegment Start of the active segment.
+     */
+    public synchronized void sealAll(Collection<Entry> entries, long numberOfEventsBeforeActiveSegment) throws IOException {
+        for (Entry entry : entries) {
+            this.put(entry);
+        }
+        this.numberOfEventsBeforeActiveSegment = numberOfEventsBeforeActiveSegment;
+        this.write();
+    }
+
+    /**
+     * Forget a deleted segment.
+     */
+    public synchronized void remove(SegmentName segmentName) throws IOException {
+        Entry removed = this.entries.remove(segmentName.getNumberOfEventsBefore());
+        if (removed != null) {
+            this.logFileSizeInBytes -= removed.getLogFileSizeInBytes();
+            this.write();
+        }
+    }
+
+    public long getNumberOfEventsBeforeActiveSegment() {
+        return this.numberOfEventsBeforeActiveSegment;
+    }
+
+    public boolean contains(SegmentName segmentName) {
+        return this.entries.containsKey(segmentName.getNumberOfEventsBefore());
+    }
+
+    public Entry get(SegmentName segmentName) {
+        return this.entries.get(segmentName.getNumberOfEventsBefore());
+    }
+
+    /**
+     * The oldest sealed segment, null if there is none.
+     */
+    public Entry getOldestEntry() {
+        Map.Entry<Long, Entry> oldest = this.entries.firstEntry();
+        return oldest == null ? null : oldest.getValue();
+    }
+
+    /**
+     * The sealed segment distance segments after the given one, the segment itself for a distance of 0. A segment
+     * that is not sealed counts from the first sealed segment after it.
+     *
+     * @return The segment, null if fewer sealed segments follow it.
+     */
+    public Entry getEntryAfter(SegmentName segmentName, int distance) {
+        Iterator<Entry> following = this.entries.tailMap(segmentName.getNumberOfEventsBefore(), true).values().iterator();
+        for (int i = 0; following.hasNext(); i++) {
+            Entry entry = following.next();
+            if (i == distance) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Total size of the logs of the sealed segments, as they were when sealed.
+     */
+    public long getLogFileSizeInBytes() {
+        return this.logFileSizeInBytes;
+    }
+
+    /**
+     * The sealed segments, ordered by the number of events before them.
+     */
+    public List<Entry> getEntries() {
+        return new ArrayList<>(this.entries.values());
+    }
+
+    private void put(Entry entry) {
+        Entry previous = this.entries.put(entry.getSegmentName().getNumberOfEventsBefore(), entry);
+        this.logFileSizeInBytes += entry.getLogFileSizeInBytes() - (previous == null ? 0 : previous.getLogFileSizeInBytes());
+    }
+
+    private void write() throws IOException {
+        ByteBuffer manifest = ByteBuffer.allocate(HEADER_SIZE_IN_BYTES + this.entries.size() * ENTRY_SIZE_IN_BYTES);
+        manifest.putInt(MAGIC).putInt(VERSION).putLong(this.numberOfEventsBeforeActiveSegment).putInt(this.entries.size());
+        for (Entry entry : this.entries.values()) {
+            long numberOfEventsBefore = entry.getSegmentName().getNumberOfEventsBefore();
+            manifest.putLong(numberOfEventsBefore).putInt(entry.getNumberOfEvents()).putLong(entry.getLogFileSizeInBytes())
+                    .putInt(checksum(numberOfEventsBefore, entry.getNumberOfEvents(), entry.getLogFileSizeInBytes()));
+        }
+        manifest.flip();
+
+        Path temporaryFilePath = Paths.get(this.filePath.toString() + TEMPORARY_FILE_EXTENSION);
+        try (FileChannel channel = FileChannel.open(temporaryFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (manifest.hasRemaining()) {
+                channel.write(manifest);
+            }
+            if (this.force) {
+                channel.force(true);
+            }
+        }
+
+        Files.move(temporaryFilePath, this.filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.debug("Wrote {} with {} sealed segments.", this.filePath, this.entries.size());
+    }
+
+    private static int checksum(long numberOfEventsBefore, int numberOfEvents, long logFileSizeInBytes) {
+        ByteBuffer entry = ByteBuffer.allocate(Long.BYTES + Integer.BYTES + Long.BYTES);
+        entry.putLong(numberOfEventsBefore).putInt(numberOfEvents).putLong(logFileSizeInBytes);
+        CRC32 crc = new CRC32();
+        crc.update(entry.array());
+        return (int) crc.getValue();
+    }
+
+    @Getter
+    public static class Entry {
+        private final SegmentName segmentName;
+        private final int numberOfEvents;
+        private final long logFileSizeInBytes;
+
+        public Entry(SegmentName segmentName, int numberOfEvents, long logFileSizeInBytes) {
+            this.segmentName = segmentName;
+            this.numberOfEvents = numberOfEvents;
+            this.logFileSizeInBytes = logFileSizeInBytes;
+        }
+
+        /**
+         * Number of events before the segment that follows this one.
+         */
+        public long getNumberOfEventsBeforeNextSegment() {
+            return this.segmentName.getNumberOfEventsBefore() + this.numberOfEvents;
+        }
+    }
+}
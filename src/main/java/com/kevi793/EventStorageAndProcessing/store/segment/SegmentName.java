@@ -1,9 +1,11 @@
 package com.kevi793.EventStorageAndProcessing.store.segment;
 
 import com.kevi793.EventStorageAndProcessing.exception.MalformedSegmentNameException;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 
 @Getter
+@EqualsAndHashCode
 public class SegmentName {
 
     private static final String DELIMITER = "-";
@@ -0,0 +1,110 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import com.kevi793.EventStorageAndProcessing.store.Event;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the events of a segment one after the other through a single channel and read buffer.
+ * Records that are next to each other in the log are served from the same buffer fill.
+ * The payload of a returned event is only valid until the next call to {@link #next()}.
+ * Compressed segments are read through their block cache instead.
+ */
+@Slf4j
+public class SegmentReader implements Closeable {
+
+    public static final int DEFAULT_READ_BUFFER_SIZE_IN_BYTES = 64 * 1024;
+
+    @Getter
+    private final Segment segment;
+    private final FileChannel channel;
+    private final ByteBuffer readBuffer;
+    private long readBufferStartPosition = -1;
+    @Getter
+    private int positionWithinSegment;
+
+    public SegmentReader(Segment segment, int positionWithinSegment) throws IOException {
+        this(segment, positionWithinSegment, DEFAULT_READ_BUFFER_SIZE_IN_BYTES);
+    }
+
+    public SegmentReader(Segment segment, int positionWithinSegment, int readBufferSizeInBytes) throws IOException {
+        this.segment = segment;
+        this.positionWithinSegment = positionWithinSegment;
+        this.channel = segment.getEventLogSegment().openReadChannel();
+        this.readBuffer = ByteBuffer.allocate(readBufferSizeInBytes);
+        log.debug("Opened reader for {} at position {}.", segment.getSegmentName(), positionWithinSegment);
+    }
+
+    /**
+     * Read the next event of the segment.
+     *
+     * @return The event, null if it is not written yet.
+     */
+    public Event next() throws IOException {
+        EventIndex eventIndex = this.segment.getEventIndexSegment().read(this.positionWithinSegment);
+        if (eventIndex == null) {
+            return null;
+        }
+
+        ByteBuffer record = this.read(eventIndex.getStartPosition(), eventIndex.getSize());
+        Event event = this.segment.getEventLogSegment().decode(record);
+        this.positionWithinSegment++;
+        return event;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.channel != null) {
+            this.channel.close();
+        }
+        log.debug("Closed reader for {}.", this.segment.getSegmentName());
+    }
+
+    private ByteBuffer read(long position, int size) throws IOException {
+        if (this.channel == null) {
+            return this.segment.getEventLogSegment().read(position, size);
+        }
+
+        this.segment.getEventLogSegment().flushIfNeeded(position + size);
+
+        if (size > this.readBuffer.capacity()) {
+            ByteBuffer record = ByteBuffer.allocate(size);
+            this.fill(record, position, size);
+            record.flip();
+            return record;
+        }
+
+        if (this.readBufferStartPosition < 0 || position < this.readBufferStartPosition
+                || position + size > this.readBufferStartPosition + this.readBuffer.limit()) {
+            this.readBuffer.clear();
+            this.fill(this.readBuffer, position, size);
+            this.readBuffer.flip();
+            this.readBufferStartPosition = position;
+        }
+
+        ByteBuffer record = this.readBuffer.duplicate();
+        int start = (int) (position - this.readBufferStartPosition);
+        record.position(start).limit(start + size);
+        return record.slice();
+    }
+
+    /**
+     * Read at least minimumBytes from position into the buffer, more if the file has them and the buffer has room.
+     */
+    private void fill(ByteBuffer buffer, long position, int minimumBytes) throws IOException {
+        while (buffer.position() < minimumBytes) {
+            int read = this.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                this.readBufferStartPosition = -1;
+                throw new EOFException(String.format("Reached the end of %s while reading %d bytes at %d.",
+                        this.segment.getEventLogSegment().getFilePath(), minimumBytes, position));
+            }
+        }
+    }
+}
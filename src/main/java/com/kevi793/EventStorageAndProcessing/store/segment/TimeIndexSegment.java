@@ -0,0 +1,126 @@
+package com.kevi793.EventStorageAndProcessing.store.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sparse time index of a segment.
+ * Every entry holds the create time of an event and its position within the segment. An entry is added at most every
+ * intervalInEvents events and only when the create time went up, so the entries are sorted by time and few enough
+ * to be kept in memory. Finding the first event created at or after a time then only reads the events between two entries.
+ */
+@Slf4j
+public class TimeIndexSegment extends BaseSegmentFile {
+
+    public static final int ENTRY_SIZE_IN_BYTES = Long.BYTES + Integer.BYTES;
+    public static final int DEFAULT_INTERVAL_IN_EVENTS = 128;
+    private static final int DEFAULT_INITIAL_CAPACITY_IN_ENTRIES = 16;
+
+    private final int intervalInEvents;
+    private long[] timestamps = new long[DEFAULT_INITIAL_CAPACITY_IN_ENTRIES];
+    private int[] positions = new int[DEFAULT_INITIAL_CAPACITY_IN_ENTRIES];
+    private int numberOfEntries;
+
+    /**
+     * @param numberOfEvents Number of events in the segment. Entries written for events that did not make it to the
+     *                       index before a crash are dropped.
+     */
+    public TimeIndexSegment(Path timeIndexSegmentFilePath, int intervalInEvents, int numberOfEvents) throws IOException {
+        super(timeIndexSegmentFilePath);
+        this.intervalInEvents = intervalInEvents;
+        this.load(numberOfEvents);
+    }
+
+    /**
+     * Add an entry for the event if it is due.
+     *
+     * @param timestamp             Create time of the event.
+     * @param positionWithinSegment Position of the event within the segment.
+     */
+    public synchronized void maybeAppend(long timestamp, int positionWithinSegment) throws IOException {
+        if (this.numberOfEntries > 0 && (positionWithinSegment - this.positions[this.numberOfEntries - 1] < this.intervalInEvents
+                || timestamp <= this.timestamps[this.numberOfEntries - 1])) {
+            return;
+        }
+
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_SIZE_IN_BYTES);
+        entry.putLong(timestamp).putInt(positionWithinSegment);
+        this.append(entry.array());
+        this.add(timestamp, positionWithinSegment);
+    }
+
+    /**
+     * Position within the segment to start looking for the first event created at or after the timestamp:
+     * the event of the last entry created before it, or the start of the segment.
+     */
+    public synchronized int lookup(long timestamp) {
+        int low = 0;
+        int high = this.numberOfEntries;
+
+        while (low < high) {
+            int mid = low + (high - low) / 2;
+            if (this.timestamps[mid] < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low == 0 ? 0 : this.positions[low - 1];
+    }
+
+    /**
+     * Create time of the first event of the segment, which always has an entry, -1 if the index is empty.
+     */
+    public synchronized long getEarliestTimestamp() {
+        return this.numberOfEntries == 0 ? -1 : this.timestamps[0];
+    }
+
+    public synchronized int getNumberOfEntries() {
+        return this.numberOfEntries;
+    }
+
+    private void add(long timestamp, int positionWithinSegment) {
+        if (this.numberOfEntries == this.timestamps.length) {
+            this.timestamps = Arrays.copyOf(this.timestamps, this.numberOfEntries * 2);
+            this.positions = Arrays.copyOf(this.positions, this.numberOfEntries * 2);
+        }
+
+        this.timestamps[this.numberOfEntries] = timestamp;
+        this.positions[this.numberOfEntries] = positionWithinSegment;
+        this.numberOfEntries++;
+    }
+
+    /**
+     * Read the entries of the file, and cut off a torn last entry or entries of events missing from the index.
+     */
+    private void load(int numberOfEvents) throws IOException {
+        ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(this.filePath));
+
+        while (entries.remaining() >= ENTRY_SIZE_IN_BYTES) {
+            long timestamp = entries.getLong(entries.position());
+            int positionWithinSegment = entries.getInt(entries.position() + Long.BYTES);
+            if (positionWithinSegment >= numberOfEvents || (this.numberOfEntries > 0 && timestamp <= this.timestamps[this.numberOfEntries - 1])) {
+                break;
+            }
+
+            this.add(timestamp, positionWithinSegment);
+            entries.position(entries.position() + ENTRY_SIZE_IN_BYTES);
+        }
+
+        if (entries.hasRemaining()) {
+            log.info("Truncating {} to its {} valid entries.", this.filePath, this.numberOfEntries);
+            try (FileChannel channel = FileChannel.open(this.filePath, StandardOpenOption.WRITE)) {
+                channel.truncate(entries.position());
+            }
+        }
+        log.debug("Loaded {} with {} entries.", this.filePath, this.numberOfEntries);
+    }
+}
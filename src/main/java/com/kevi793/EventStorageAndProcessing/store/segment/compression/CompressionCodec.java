@@ -0,0 +1,27 @@
+package com.kevi793.EventStorageAndProcessing.store.segment.compression;
+
+import java.io.IOException;
+
+/**
+ * Compresses the blocks of sealed segments.
+ * The id is written in the compressed file, so a codec must keep its id and be registered in
+ * {@link CompressionCodecs} before compressed files written with it are read.
+ */
+public interface CompressionCodec {
+
+    byte getId();
+
+    /**
+     * @param bytes  The block.
+     * @param offset Start of the block in bytes.
+     * @param length Length of the block.
+     * @return The compressed block.
+     */
+    byte[] compress(byte[] bytes, int offset, int length);
+
+    /**
+     * @param compressed  The compressed block.
+     * @param destination Array of exactly the uncompressed length of the block, filled with the block.
+     */
+    void decompress(byte[] compressed, byte[] destination) throws IOException;
+}
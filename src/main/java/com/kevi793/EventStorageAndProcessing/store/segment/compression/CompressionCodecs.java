@@ -0,0 +1,35 @@
+package com.kevi793.EventStorageAndProcessing.store.segment.compression;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Codecs known by their id, used to read compressed files with the codec they were written with.
+ */
+public class CompressionCodecs {
+
+    private static final Map<Byte, CompressionCodec> codecs = new ConcurrentHashMap<>();
+
+    static {
+        register(new DeflateCompressionCodec());
+    }
+
+    private CompressionCodecs() {
+    }
+
+    public static void register(CompressionCodec codec) {
+        CompressionCodec registeredCodec = codecs.putIfAbsent(codec.getId(), codec);
+        if (registeredCodec != null && registeredCodec.getClass() != codec.getClass()) {
+            throw new IllegalArgumentException(String.format("Codec id %d is already used by %s.", codec.getId(), registeredCodec.getClass().getName()));
+        }
+    }
+
+    public static CompressionCodec get(byte id) {
+        CompressionCodec codec = codecs.get(id);
+        if (codec == null) {
+            throw new IllegalArgumentException(String.format("No codec registered with id %d.", id));
+        }
+
+        return codec;
+    }
+}
@@ -0,0 +1,73 @@
+package com.kevi793.EventStorageAndProcessing.store.segment.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate from java.util.zip.
+ */
+public class DeflateCompressionCodec implements CompressionCodec {
+
+    public static final byte ID = 1;
+
+    private final int level;
+
+    public DeflateCompressionCodec() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public DeflateCompressionCodec(int level) {
+        this.level = level;
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes, int offset, int length) {
+        Deflater deflater = new Deflater(this.level);
+        try {
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 4 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int compressedLength = deflater.deflate(buffer);
+                compressed.write(buffer, 0, compressedLength);
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(byte[] compressed, byte[] destination) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int decompressedLength = 0;
+            while (decompressedLength < destination.length && !inflater.finished()) {
+                int inflated = inflater.inflate(destination, decompressedLength, destination.length - decompressedLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                decompressedLength += inflated;
+            }
+
+            if (decompressedLength != destination.length) {
+                throw new IOException(String.format("Decompressed %d bytes instead of %d.", decompressedLength, destination.length));
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Compressed block is corrupt.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.kevi793.EventStorageAndProcessing.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SLRUCacheTest {
+
+    private final List<String> evicted = new ArrayList<>();
+    private final Map<String, Long> weights = new HashMap<>();
+
+    @Test
+    public void leastRecentlyUsedKeyIsEvictedWhenFull() {
+        SLRUCache<String, String> cache = this.cache(3, Long.MAX_VALUE);
+        cache.put("a", "a");
+        cache.put("b", "b");
+        cache.put("c", "c");
+        cache.put("d", "d");
+
+        assertEquals(Arrays.asList("a"), this.evicted);
+        assertNull(cache.get("a"));
+        assertEquals("d", cache.get("d"));
+    }
+
+    @Test
+    public void hitKeyIsPromotedAndOutlivesAScan() {
+        SLRUCache<String, String> cache = this.cache(5, Long.MAX_VALUE);
+        cache.put("hot", "hot");
+        assertEquals("hot", cache.get("hot"));
+
+        // Keys used once only evict each other, not the key in regular use.
+        for (int i = 0; i < 20; i++) {
+            cache.put("scan" + i, "scan" + i);
+        }
+
+        assertEquals("hot", cache.get("hot"));
+        assertEquals(16, this.evicted.size());
+        assertFalse(this.evicted.contains("hot"));
+    }
+
+    @Test
+    public void protectedKeyIsDemotedWhenTheProtectedSegmentIsFull() {
+        // Four keys, so three of them fit in the protected segment.
+        SLRUCache<String, String> cache = this.cache(4, Long.MAX_VALUE);
+        for (String key : Arrays.asList("a", "b", "c", "d")) {
+            cache.put(key, key);
+            cache.get(key);
+        }
+
+        // a was demoted to probation when d was promoted, so it goes first.
+        cache.put("e", "e");
+        assertEquals(Arrays.asList("a"), this.evicted);
+    }
+
+    @Test
+    public void keysAreEvictedOverTheMaxWeight() {
+        SLRUCache<String, String> cache = this.cache(10, 100);
+        this.putWeighing(cache, "a", 40);
+        this.putWeighing(cache, "b", 40);
+        this.putWeighing(cache, "c", 40);
+
+        assertEquals(Arrays.asList("a"), this.evicted);
+        assertEquals(80, cache.getStats().getWeight());
+    }
+
+    @Test
+    public void keyHeavierThanTheMaxWeightIsKept() {
+        SLRUCache<String, String> cache = this.cache(10, 100);
+        this.putWeighing(cache, "a", 10);
+        this.putWeighing(cache, "big", 500);
+
+        assertEquals(Arrays.asList("a"), this.evicted);
+        assertEquals("big", cache.get("big"));
+    }
+
+    @Test
+    public void reweighedKeyEvictsOthers() {
+        SLRUCache<String, String> cache = this.cache(10, 100);
+        this.putWeighing(cache, "a", 30);
+        this.putWeighing(cache, "b", 30);
+
+        this.weights.put("b", 90L);
+        cache.reweigh("b");
+
+        assertEquals(Arrays.asList("a"), this.evicted);
+        assertEquals(90, cache.getStats().getWeight());
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    public void reweighOfAMissingKeyDoesNothing() {
+        SLRUCache<String, String> cache = this.cache(10, 100);
+        this.putWeighing(cache, "a", 30);
+
+        cache.reweigh("missing");
+
+        assertEquals(30, cache.getStats().getWeight());
+        assertTrue(this.evicted.isEmpty());
+    }
+
+    @Test
+    public void removedKeyIsNotPassedToTheEvictionListener() {
+        SLRUCache<String, String> cache = this.cache(10, 100);
+        this.putWeighing(cache, "a", 30);
+        cache.get("a");
+
+        assertEquals("a", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(0, cache.getStats().getWeight());
+        assertTrue(this.evicted.isEmpty());
+    }
+
+    @Test
+    public void replacedValueIsWeighedAgain() {
+        SLRUCache<String, String> cache = this.cache(10, 100);
+        this.putWeighing(cache, "a", 30);
+        this.putWeighing(cache, "a", 50);
+
+        assertEquals(50, cache.getStats().getWeight());
+        assertEquals(1, cache.getStats().getSize());
+    }
+
+    @Test
+    public void statsCountHitsMissesAndEvictions() {
+        SLRUCache<String, String> cache = this.cache(1, Long.MAX_VALUE);
+        cache.put("a", "a");
+        cache.get("a");
+        cache.get("b");
+        cache.put("b", "b");
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+    }
+
+    private SLRUCache<String, String> cache(int maxSize, long maxWeight) {
+        return new SLRUCache<>(maxSize, maxWeight, value -> this.weights.getOrDefault(value, 0L), (key, value) -> this.evicted.add(key));
+    }
+
+    private void putWeighing(SLRUCache<String, String> cache, String key, long weight) {
+        this.weights.put(key, weight);
+        cache.put(key, key);
+    }
+}
@@ -0,0 +1,267 @@
+package com.kevi793.EventStorageAndProcessing.replication;
+
+import com.kevi793.EventStorageAndProcessing.store.EventStore;
+import com.kevi793.EventStorageAndProcessing.store.segment.SegmentName;
+import com.kevi793.EventStorageAndProcessing.store.segment.compression.DeflateCompressionCodec;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DirectoryReplicationTargetTest {
+
+    private static final String NAME = "items";
+    private static final int NUMBER_OF_EVENTS = 1000;
+    private static final int EVENTS_PER_SEGMENT = 100;
+    private static final long TIMEOUT_IN_MS = 10 * 1000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void followerCatchesUpWithTheStore() throws Exception {
+        File dataDir = this.temporaryFolder.newFolder("data");
+        File replicaDir = this.temporaryFolder.newFolder("replica");
+
+        EventStore<Item> eventStore = this.builder(dataDir)
+                .replicaDataDirPath(replicaDir.getPath())
+                .build();
+        this.write(eventStore, 0, NUMBER_OF_EVENTS);
+        this.awaitReplication(eventStore, NUMBER_OF_EVENTS);
+        eventStore.close();
+
+        this.assertSameSegmentFiles(dataDir.toPath().resolve(NAME), replicaDir.toPath().resolve(NAME));
+        this.assertReadable(replicaDir, NUMBER_OF_EVENTS);
+    }
+
+    @Test
+    public void replicatorResumesFromWhatTheFollowerHas() throws Exception {
+        File dataDir = this.temporaryFolder.newFolder("data");
+        File replicaDir = this.temporaryFolder.newFolder("replica");
+        Path logDirPath = dataDir.toPath().resolve(NAME);
+        Path replicaLogDirPath = replicaDir.toPath().resolve(NAME);
+
+        EventStore<Item> eventStore = this.builder(dataDir).build();
+        this.write(eventStore, 0, NUMBER_OF_EVENTS);
+        eventStore.close();
+
+        // The follower has the first segments in full and half of the log of the next one.
+        List<SegmentName> segmentNames = this.segmentNames(logDirPath);
+        Files.createDirectories(replicaLogDirPath);
+        for (int i = 0; i < 3; i++) {
+            this.copySegment(logDirPath, replicaLogDirPath, segmentNames.get(i));
+        }
+        String partialLogFileName = segmentNames.get(3) + ".log";
+        long partialLogSize = Files.size(logDirPath.resolve(partialLogFileName)) / 2;
+        this.copy(logDirPath.resolve(partialLogFileName), replicaLogDirPath.resolve(partialLogFileName), partialLogSize);
+
+        RecordingReplicationTarget replicationTarget = new RecordingReplicationTarget(new DirectoryReplicationTarget(replicaLogDirPath));
+        eventStore = this.builder(dataDir)
+                .replicationTarget(replicationTarget)
+                .build();
+        this.write(eventStore, NUMBER_OF_EVENTS, NUMBER_OF_EVENTS + EVENTS_PER_SEGMENT);
+        this.awaitReplication(eventStore, NUMBER_OF_EVENTS + EVENTS_PER_SEGMENT);
+        eventStore.close();
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(replicationTarget.firstPositions.containsKey(segmentNames.get(i) + ".log"));
+            assertFalse(replicationTarget.firstPositions.containsKey(segmentNames.get(i) + ".index"));
+        }
+        assertEquals(Long.valueOf(partialLogSize), replicationTarget.firstPositions.get(partialLogFileName));
+        this.assertSameSegmentFiles(logDirPath, replicaLogDirPath);
+        this.assertReadable(replicaDir, NUMBER_OF_EVENTS + EVENTS_PER_SEGMENT);
+    }
+
+    @Test
+    public void compressedSegmentsAreShippedCompressed() throws Exception {
+        File dataDir = this.temporaryFolder.newFolder("data");
+        File replicaDir = this.temporaryFolder.newFolder("replica");
+        Path logDirPath = dataDir.toPath().resolve(NAME);
+        Path replicaLogDirPath = replicaDir.toPath().resolve(NAME);
+
+        EventStore<Item> eventStore = this.builder(dataDir)
+                .compressionCodec(new DeflateCompressionCodec())
+                .compactionTimeIntervalInMs(10)
+                .build();
+        this.write(eventStore, 0, NUMBER_OF_EVENTS);
+        int numberOfSealedSegments = NUMBER_OF_EVENTS / EVENTS_PER_SEGMENT - 1;
+        this.await(() -> this.countFiles(logDirPath, ".clog") == numberOfSealedSegments);
+        eventStore.close();
+
+        // Reopened without a codec, so no segment is compressed after the replicator shipped it uncompressed.
+        eventStore = this.builder(dataDir)
+                .replicaDataDirPath(replicaDir.getPath())
+                .build();
+        this.awaitReplication(eventStore, NUMBER_OF_EVENTS);
+        eventStore.close();
+
+        List<SegmentName> segmentNames = this.segmentNames(logDirPath);
+        for (SegmentName segmentName : segmentNames.subList(0, numberOfSealedSegments)) {
+            assertTrue(Files.exists(replicaLogDirPath.resolve(segmentName + ".clog")));
+            assertFalse(Files.exists(replicaLogDirPath.resolve(segmentName + ".log")));
+        }
+        this.assertSameSegmentFiles(logDirPath, replicaLogDirPath);
+        this.assertReadable(replicaDir, NUMBER_OF_EVENTS);
+    }
+
+    private EventStore.EventStoreBuilder<Item> builder(File dataDir) {
+        return new EventStore.EventStoreBuilder<Item>(dataDir.getPath(), NAME, item -> {
+        }, Item.class)
+                .maxSegmentNumberOfEvents(EVENTS_PER_SEGMENT)
+                .retainedProcessedSegments(Integer.MAX_VALUE);
+    }
+
+    private void write(EventStore<Item> eventStore, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            eventStore.write(new Item("item-" + i, i));
+        }
+    }
+
+    private void awaitReplication(EventStore<Item> eventStore, long numberOfEvents) throws InterruptedException {
+        this.await(() -> eventStore.getReplicatedHighWatermark() == numberOfEvents);
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_IN_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting for the follower.", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Open the follower as a store and read every event back.
+     */
+    private void assertReadable(File replicaDir, int numberOfEvents) throws IOException {
+        EventStore<Item> follower = new EventStore.EventStoreBuilder<Item>(replicaDir.getPath(), NAME, null, Item.class)
+                .maxSegmentNumberOfEvents(EVENTS_PER_SEGMENT)
+                .build();
+        try {
+            assertEquals(numberOfEvents, follower.getHighWatermark());
+            for (int i = 0; i < numberOfEvents; i++) {
+                assertEquals(i, follower.read(i).price);
+            }
+        } finally {
+            follower.close();
+        }
+    }
+
+    /**
+     * The logs and indexes of the follower match the store, up to the preallocated end of the active index.
+     */
+    private void assertSameSegmentFiles(Path logDirPath, Path replicaLogDirPath) throws IOException {
+        List<SegmentName> segmentNames = this.segmentNames(logDirPath);
+        for (SegmentName segmentName : segmentNames) {
+            for (String fileName : new String[]{segmentName + ".log", segmentName + ".clog", segmentName + ".index"}) {
+                Path filePath = logDirPath.resolve(fileName);
+                if (!Files.exists(filePath)) {
+                    continue;
+                }
+
+                byte[] expected = Files.readAllBytes(filePath);
+                Path replicaFilePath = replicaLogDirPath.resolve(fileName);
+                if (!Files.exists(replicaFilePath)) {
+                    // Nothing is shipped for the empty segment the last roll created.
+                    assertEquals(fileName, 0, expected.length);
+                    continue;
+                }
+
+                byte[] actual = Files.readAllBytes(replicaFilePath);
+                byte[] expectedPrefix = new byte[Math.min(expected.length, actual.length)];
+                System.arraycopy(expected, 0, expectedPrefix, 0, expectedPrefix.length);
+                assertArrayEquals(fileName, expectedPrefix, actual);
+            }
+        }
+    }
+
+    private List<SegmentName> segmentNames(Path logDirPath) throws IOException {
+        List<SegmentName> segmentNames = new ArrayList<>();
+        for (int numberOfEventsBefore = 0; ; numberOfEventsBefore += EVENTS_PER_SEGMENT) {
+            SegmentName segmentName = new SegmentName(numberOfEventsBefore);
+            if (!Files.exists(logDirPath.resolve(segmentName + ".index"))) {
+                return segmentNames;
+            }
+            segmentNames.add(segmentName);
+        }
+    }
+
+    private long countFiles(Path directoryPath, String extension) {
+        String[] fileNames = directoryPath.toFile().list((dir, fileName) -> fileName.endsWith(extension));
+        return fileNames == null ? 0 : fileNames.length;
+    }
+
+    private void copySegment(Path logDirPath, Path replicaLogDirPath, SegmentName segmentName) throws IOException {
+        for (String fileName : new String[]{segmentName + ".log", segmentName + ".index", segmentName + ".timeindex"}) {
+            Files.copy(logDirPath.resolve(fileName), replicaLogDirPath.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void copy(Path source, Path target, long size) throws IOException {
+        byte[] bytes = Files.readAllBytes(source);
+        byte[] prefix = new byte[(int) size];
+        System.arraycopy(bytes, 0, prefix, 0, prefix.length);
+        Files.write(target, prefix);
+    }
+
+    public static class Item {
+        public String name;
+        public int price;
+
+        public Item() {
+        }
+
+        public Item(String name, int price) {
+            this.name = name;
+            this.price = price;
+        }
+    }
+
+    /**
+     * Records the position each file is first shipped from.
+     */
+    private static class RecordingReplicationTarget implements ReplicationTarget {
+        private final ReplicationTarget replicationTarget;
+        private final Map<String, Long> firstPositions = new ConcurrentHashMap<>();
+
+        private RecordingReplicationTarget(ReplicationTarget replicationTarget) {
+            this.replicationTarget = replicationTarget;
+        }
+
+        @Override
+        public long size(String fileName) throws IOException {
+            return this.replicationTarget.size(fileName);
+        }
+
+        @Override
+        public WritableByteChannel open(String fileName, long position) throws IOException {
+            this.firstPositions.putIfAbsent(fileName, position);
+            return this.replicationTarget.open(fileName, position);
+        }
+
+        @Override
+        public void acknowledge(WritableByteChannel channel, boolean durable) throws IOException {
+            this.replicationTarget.acknowledge(channel, durable);
+        }
+
+        @Override
+        public void delete(String fileName) throws IOException {
+            this.replicationTarget.delete(fileName);
+        }
+    }
+}
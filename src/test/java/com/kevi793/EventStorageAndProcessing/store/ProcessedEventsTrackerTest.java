@@ -0,0 +1,128 @@
+package com.kevi793.EventStorageAndProcessing.store;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class ProcessedEventsTrackerTest {
+
+    private static final int FILE_SIZE_IN_BYTES = 48;
+    private static final int SLOT_SIZE_IN_BYTES = 24;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void newTrackerStartsAtZero() throws Exception {
+        ProcessedEventsTracker tracker = new ProcessedEventsTracker(this.newTrackerFile());
+
+        assertEquals(0, tracker.getNumberOfEventsProcessedSoFar());
+    }
+
+    @Test
+    public void checkpointIsReadBackAfterReopen() throws Exception {
+        Path filePath = this.newTrackerFile();
+        ProcessedEventsTracker tracker = this.open(filePath);
+        tracker.write(100);
+        tracker.write(250);
+
+        assertEquals(250, this.open(filePath).getNumberOfEventsProcessedSoFar());
+        assertEquals(FILE_SIZE_IN_BYTES, Files.size(filePath));
+    }
+
+    @Test
+    public void writeBelowTheCheckpointIntervalIsPersistedOnFlush() throws Exception {
+        Path filePath = this.newTrackerFile();
+        ProcessedEventsTracker tracker = new ProcessedEventsTracker(filePath, 1000, Long.MAX_VALUE);
+        tracker.write(10);
+
+        assertEquals(0, this.open(filePath).getNumberOfEventsProcessedSoFar());
+        tracker.flush();
+        assertEquals(10, this.open(filePath).getNumberOfEventsProcessedSoFar());
+    }
+
+    @Test
+    public void tornSlotFallsBackToThePreviousCheckpoint() throws Exception {
+        Path filePath = this.newTrackerFile();
+        ProcessedEventsTracker tracker = this.open(filePath);
+        tracker.write(100);
+        tracker.write(200);
+
+        // Tear the number of the slot holding the latest checkpoint, as a crash in the middle of persisting would.
+        byte[] bytes = Files.readAllBytes(filePath);
+        int latestSlot = this.latestSlot(ByteBuffer.wrap(bytes));
+        bytes[latestSlot * SLOT_SIZE_IN_BYTES + Long.BYTES - 1] ^= 1;
+        Files.write(filePath, bytes);
+
+        tracker = this.open(filePath);
+        assertEquals(100, tracker.getNumberOfEventsProcessedSoFar());
+
+        // The next checkpoint goes to the torn slot and is the one read back.
+        tracker.write(300);
+        assertEquals(300, this.open(filePath).getNumberOfEventsProcessedSoFar());
+    }
+
+    @Test
+    public void legacyTextTrackerIsConverted() throws Exception {
+        Path filePath = this.newTrackerFile();
+        Files.write(filePath, "1234\n".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(1234, this.open(filePath).getNumberOfEventsProcessedSoFar());
+        assertEquals(FILE_SIZE_IN_BYTES, Files.size(filePath));
+        assertEquals(1234, this.open(filePath).getNumberOfEventsProcessedSoFar());
+    }
+
+    @Test
+    public void legacyConversionOverwritesATemporaryFileLeftByACrash() throws Exception {
+        Path filePath = this.newTrackerFile();
+        Path tempFilePath = Paths.get(filePath.toString() + ".tmp");
+        Files.write(filePath, "77".getBytes(StandardCharsets.UTF_8));
+        Files.write(tempFilePath, new byte[]{1, 2, 3});
+
+        assertEquals(77, this.open(filePath).getNumberOfEventsProcessedSoFar());
+        assertFalse(Files.exists(tempFilePath));
+        assertEquals(77, this.open(filePath).getNumberOfEventsProcessedSoFar());
+    }
+
+    @Test
+    public void resetIsPersistedAndPolledOnce() throws Exception {
+        Path filePath = this.newTrackerFile();
+        ProcessedEventsTracker tracker = this.open(filePath);
+        tracker.write(500);
+        tracker.reset(20);
+        tracker.write(600);
+
+        assertEquals(20, tracker.getNumberOfEventsProcessedSoFar());
+        assertEquals(20, this.open(filePath).getNumberOfEventsProcessedSoFar());
+        assertEquals(Long.valueOf(20), tracker.pollReset());
+        assertNull(tracker.pollReset());
+    }
+
+    private Path newTrackerFile() throws IOException {
+        return this.temporaryFolder.newFile("processed.log").toPath();
+    }
+
+    private ProcessedEventsTracker open(Path filePath) throws IOException {
+        return new ProcessedEventsTracker(filePath, 1, Long.MAX_VALUE);
+    }
+
+    /**
+     * Index of the slot with the highest sequence.
+     */
+    private int latestSlot(ByteBuffer bytes) {
+        long firstSequence = bytes.getLong(Long.BYTES);
+        long secondSequence = bytes.getLong(SLOT_SIZE_IN_BYTES + Long.BYTES);
+        return firstSequence > secondSequence ? 0 : 1;
+    }
+}